@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Compare per bin Math.log10 against the FFTDbTable lookups on synthetic
+ * captures. Runs on any desktop JVM:
+ *
+ *   javac -d out -sourcepath src:benchmark/src \
+ *       benchmark/src/com/android/systemui/navigation/pulse/FFTDbTableBenchmark.java
+ *   java -cp out com.android.systemui.navigation.pulse.FFTDbTableBenchmark
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.util.Random;
+
+public class FFTDbTableBenchmark {
+    private static final int CAPTURE_SIZE = 1024;
+    private static final int FRAMES = 64;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 2000;
+    private static final float FUDGE = 5f;
+
+    private static byte[][] sFrames;
+    private static int sSink;
+
+    public static void main(String[] args) {
+        sFrames = new byte[FRAMES][CAPTURE_SIZE];
+        Random random = new Random(42);
+        for (byte[] frame : sFrames) {
+            random.nextBytes(frame);
+        }
+        final FFTDbTable table = new FFTDbTable();
+        table.setScale(FUDGE, 0f);
+        verify(table);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sSink += runLog10();
+            sSink += runTable();
+            sSink += runScaled(table);
+        }
+        report("Math.log10", time(() -> runLog10()));
+        report("FFTDbTable.dB", time(() -> runTable()));
+        report("FFTDbTable.scaled", time(() -> runScaled(table)));
+        System.out.println("(sink " + sSink + ")");
+    }
+
+    private interface Body {
+        int run();
+    }
+
+    private static long time(Body body) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sSink += body.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos) {
+        final double perFrame = (double) nanos / ROUNDS / FRAMES;
+        final double perBin = perFrame / (CAPTURE_SIZE / 2);
+        System.out.println(String.format("%-20s %10.1f ns/frame %8.2f ns/bin", name, perFrame,
+                perBin));
+    }
+
+    private static int runLog10() {
+        int sum = 0;
+        for (byte[] fft : sFrames) {
+            for (int i = 0; i < fft.length; i += 2) {
+                final byte rfk = fft[i];
+                final byte ifk = fft[i + 1];
+                final float magnitude = rfk * rfk + ifk * ifk;
+                final int dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
+                sum += (int) (dbValue * FUDGE);
+            }
+        }
+        return sum;
+    }
+
+    private static int runTable() {
+        int sum = 0;
+        for (byte[] fft : sFrames) {
+            for (int i = 0; i < fft.length; i += 2) {
+                sum += (int) (FFTDbTable.dB(fft[i], fft[i + 1]) * FUDGE);
+            }
+        }
+        return sum;
+    }
+
+    private static int runScaled(FFTDbTable table) {
+        int sum = 0;
+        for (byte[] fft : sFrames) {
+            for (int i = 0; i < fft.length; i += 2) {
+                sum += (int) table.scaled(fft[i], fft[i + 1]);
+            }
+        }
+        return sum;
+    }
+
+    private static void verify(FFTDbTable table) {
+        for (int r = -128; r < 128; r++) {
+            for (int i = -128; i < 128; i++) {
+                final float magnitude = r * r + i * i;
+                final int expected = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
+                if (FFTDbTable.dB((byte) r, (byte) i) != expected
+                        || table.scaled((byte) r, (byte) i) != expected * FUDGE) {
+                    throw new IllegalStateException("table mismatch at " + r + "," + i);
+                }
+            }
+        }
+    }
+}
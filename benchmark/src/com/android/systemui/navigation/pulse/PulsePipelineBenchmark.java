@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Per frame cost of the Pulse processing path on synthetic captures, for
+ * the solid line and fading block configurations over several capture
+ * sizes and unit counts, plus the legacy boxed FFTAverage against
+ * FFTSmoother. Reports ns/frame and bytes allocated/frame. Captures go
+ * through the same BandProcessor Renderer.onFFTUpdate() uses, and bars through
+ * the same SolidLineGeometry and FadingBlockGeometry the renderers lay out
+ * with. The renderers themselves need a Context and Canvas, so the stand-ins
+ * below only skip the canvas calls. Each PulseGovernor quality level and
+ * solid line bar style also gets a run, and the mesh styles once more as the
+ * BarMesh a software canvas draws. Runs on any desktop HotSpot JVM:
+ *
+ *   javac -d out -sourcepath src:benchmark/src \
+ *       benchmark/src/com/android/systemui/navigation/pulse/PulsePipelineBenchmark.java
+ *   java -cp out com.android.systemui.navigation.pulse.PulsePipelineBenchmark [recording]
+ *
+ * Pass a FrameRecorder file (dumpsys ... --pulse-record, then pull the file
+ * it reports) to also run the pipelines over real captures instead of only
+ * synthetic ones.
+ *
+ * A steady state allocation above 0 B/frame is a regression.
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class PulsePipelineBenchmark {
+    private static final int[] CAPTURE_SIZES = { 128, 256, 512, 1024 };
+    private static final int[] SOLID_UNITS = { 16, 32, 64, 128 };
+    private static final int[] BLOCK_DIVISIONS = { 4, 16, 44 };
+    private static final int[] BAR_STYLES = {
+            SolidLineGeometry.BAR_STYLE_FADE,
+            SolidLineGeometry.BAR_STYLE_FLAT,
+            SolidLineGeometry.BAR_STYLE_ROUND,
+            SolidLineGeometry.BAR_STYLE_GRADIENT_CAP,
+    };
+    // what PulseGovernor hands Renderer.setQuality() at each level below
+    // LEVEL_REDUCED_FPS, which only changes how often frames are drawn
+    private static final Quality[] QUALITY_LEVELS = {
+            new Quality("full", 1, true, true),
+            new Quality("no-fade", 1, true, false),
+            new Quality("no-interp", 1, false, false),
+            new Quality("half", 2, false, false),
+            new Quality("quarter", 4, false, false),
+    };
+    private static final Quality FULL_QUALITY = QUALITY_LEVELS[0];
+    private static final int MIN_UNITS = 8;
+    private static final int QUALITY_CAPTURE_SIZE = 512;
+    private static final int QUALITY_UNITS = 64;
+    private static final int QUALITY_DIVISIONS = 16;
+    private static final int MAX_CAPTURE_BINS = 512;
+    private static final int SYNTHETIC_FRAMES = 64;
+    private static final int WARMUP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 50000;
+    // a 60Hz frame, so the interpolator is mid animation on every draw
+    private static final long FRAME_MILLIS = 16;
+    private static final int BAR_LENGTH = 1080;
+    private static final int BAR_THICKNESS = 144;
+
+    private static final com.sun.management.ThreadMXBean sThreadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static float sSink;
+
+    public static void main(String[] args) throws IOException {
+        sThreadBean.setThreadAllocatedMemoryEnabled(true);
+        System.out.println(String.format("%-36s %12s %12s", "case", "ns/frame", "B/frame"));
+        if (args.length > 0) {
+            final byte[][] frames = loadRecording(args[0]);
+            final int size = frames[0].length;
+            for (int units : SOLID_UNITS) {
+                run("SolidLine recorded=" + size + " units=" + units,
+                        new SolidLineStandIn(units, SolidLineGeometry.BAR_STYLE_FADE,
+                                FULL_QUALITY, false), frames);
+            }
+            for (int divisions : BLOCK_DIVISIONS) {
+                run("FadingBlock recorded=" + size + " div=" + divisions,
+                        new FadingBlockStandIn(divisions, FULL_QUALITY), frames);
+            }
+            run("BeatDetector recorded=" + size, new BeatDetectorStandIn(), frames);
+        }
+        for (int size : CAPTURE_SIZES) {
+            final byte[][] frames = makeFrames(size);
+            for (int units : SOLID_UNITS) {
+                run("SolidLine capture=" + size + " units=" + units,
+                        new SolidLineStandIn(units, SolidLineGeometry.BAR_STYLE_FADE,
+                                FULL_QUALITY, false), frames);
+            }
+            for (int divisions : BLOCK_DIVISIONS) {
+                run("FadingBlock capture=" + size + " div=" + divisions,
+                        new FadingBlockStandIn(divisions, FULL_QUALITY), frames);
+            }
+            run("BeatDetector capture=" + size, new BeatDetectorStandIn(), frames);
+        }
+        final byte[][] frames = makeFrames(QUALITY_CAPTURE_SIZE);
+        for (Quality quality : QUALITY_LEVELS) {
+            for (int style : BAR_STYLES) {
+                run("SolidLine " + quality.mName + " style=" + style,
+                        new SolidLineStandIn(QUALITY_UNITS, style, quality, false), frames);
+            }
+            run("FadingBlock " + quality.mName,
+                    new FadingBlockStandIn(QUALITY_DIVISIONS, quality), frames);
+        }
+        for (int style : BAR_STYLES) {
+            if (SolidLineGeometry.hasMesh(style)) {
+                run("SolidLine mesh style=" + style,
+                        new SolidLineStandIn(QUALITY_UNITS, style, FULL_QUALITY, true), frames);
+            }
+        }
+        for (int units : SOLID_UNITS) {
+            run("FFTAverage (boxed) bands=" + units, new LegacyAverageStandIn(units), null);
+            run("FFTSmoother bands=" + units, new SmootherStandIn(units), null);
+        }
+        System.out.println("(sink " + sSink + ")");
+    }
+
+    private static void run(String name, Pipeline pipeline, byte[][] frames) {
+        long now = 0;
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            pipeline.frame(frames == null ? null : frames[i % frames.length], now += FRAME_MILLIS);
+        }
+        final long thread = Thread.currentThread().getId();
+        final long bytes = sThreadBean.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            pipeline.frame(frames == null ? null : frames[i % frames.length], now += FRAME_MILLIS);
+        }
+        final long nanos = System.nanoTime() - start;
+        final long allocated = sThreadBean.getThreadAllocatedBytes(thread) - bytes;
+        System.out.println(String.format("%-36s %12.1f %12.1f", name,
+                (double) nanos / MEASURED_FRAMES, (double) allocated / MEASURED_FRAMES));
+    }
+
+    /**
+     * Loud low end falling off towards Nyquist, with some jitter so the
+     * smoother and interpolator have work to do
+     */
+    private static byte[][] makeFrames(int size) {
+        final Random random = new Random(42);
+        final byte[][] frames = new byte[SYNTHETIC_FRAMES][size];
+        for (byte[] frame : frames) {
+            for (int k = 0; k < size / 2; k++) {
+                final float level = 127f / (1 + k / 8f);
+                frame[k * 2] = (byte) (level * (random.nextFloat() * 2 - 1));
+                frame[k * 2 + 1] = (byte) (level * (random.nextFloat() * 2 - 1));
+            }
+        }
+        return frames;
+    }
+
+    private static byte[][] loadRecording(String path) throws IOException {
+        final ArrayList<byte[]> frames = new ArrayList<>();
+        try (FramePlayer player = new FramePlayer(new FileInputStream(path))) {
+            player.play(new FrameListener() {
+                @Override
+                public void onFFTUpdate(byte[] bytes) {
+                    // the player reuses its buffer
+                    frames.add(bytes.clone());
+                }
+
+                @Override
+                public void onWaveFormUpdate(byte[] bytes) {
+                }
+            }, FramePlayer.SPEED_UNPACED);
+        }
+        if (frames.isEmpty()) {
+            throw new IOException(path + " has no FFT frames");
+        }
+        return frames.toArray(new byte[frames.size()][]);
+    }
+
+    private interface Pipeline {
+        void frame(byte[] fft, long now);
+    }
+
+    private static class Quality {
+        final String mName;
+        final int mUnitDivisor;
+        final boolean mInterpolate;
+        final boolean mFade;
+
+        Quality(String name, int unitDivisor, boolean interpolate, boolean fade) {
+            mName = name;
+            mUnitDivisor = unitDivisor;
+            mInterpolate = interpolate;
+            mFade = fade;
+        }
+    }
+
+    /**
+     * Renderer.onFFTUpdate() followed by one draw
+     */
+    private abstract static class RendererStandIn implements Pipeline {
+        final BandProcessor mBandProcessor = new BandProcessor();
+
+        RendererStandIn() {
+            mBandProcessor.setSmoothing(true, FFTSmoother.MODE_MOVING_AVERAGE,
+                    FFTSmoother.DEFAULT_WINDOW_LENGTH);
+        }
+
+        @Override
+        public void frame(byte[] fft, long now) {
+            final int bands = Math.max(0, getBandCount(fft.length / 2));
+            onBandsUpdate(mBandProcessor.process(fft, bands), bands);
+            draw(now);
+        }
+
+        abstract int getBandCount(int bins);
+
+        abstract void onBandsUpdate(float[] bands, int count);
+
+        abstract void draw(long now);
+    }
+
+    private static class SolidLineStandIn extends RendererStandIn {
+        private final SolidLineGeometry mGeometry = new SolidLineGeometry();
+        private final int mBarStyle;
+        private final Quality mQuality;
+        private final boolean mMesh;
+        private TripleBuffer mBuffer;
+
+        /**
+         * @param mesh - draw as a software canvas would, mesh styles only
+         */
+        SolidLineStandIn(int units, int barStyle, Quality quality, boolean mesh) {
+            mBarStyle = barStyle;
+            mQuality = quality;
+            mMesh = mesh;
+            mBandProcessor.setScale(5f, 0f);
+            mBandProcessor.setBandMapping(BandMapper.TYPE_LINEAR, 1, 1);
+            mGeometry.setSize(BAR_LENGTH, BAR_THICKNESS, false);
+            mGeometry.setUnits(SolidLineGeometry.getUnits(units, MIN_UNITS,
+                    quality.mUnitDivisor));
+        }
+
+        @Override
+        int getBandCount(int bins) {
+            return mGeometry.getBandCount(bins);
+        }
+
+        @Override
+        void onBandsUpdate(float[] bands, int count) {
+            if (mBuffer == null || mBuffer.size() != count) {
+                mBuffer = new TripleBuffer(count);
+            }
+            System.arraycopy(bands, 0, mBuffer.getWriteBuffer(), 0, count);
+            mBuffer.publish();
+        }
+
+        @Override
+        void draw(long now) {
+            if (mBuffer.update()) {
+                mGeometry.setBands(mBuffer.getReadBuffer(), mQuality.mInterpolate, now);
+            }
+            if (mQuality.mInterpolate) {
+                mGeometry.advance(now);
+            }
+            final int alpha = SolidLineGeometry.getLineAlpha(mBarStyle, mQuality.mFade, 255, 200);
+            if (mMesh) {
+                // in place of drawVertices()
+                sSink += mGeometry.updateMesh(mBarStyle, 0x00ffffff | (alpha << 24))
+                        .getVertices()[3];
+            } else {
+                // in place of drawLines()
+                sSink += mGeometry.getPoints()[1] + alpha;
+            }
+        }
+    }
+
+    private static class FadingBlockStandIn extends RendererStandIn {
+        private final FadingBlockGeometry mGeometry = new FadingBlockGeometry();
+        private TripleBuffer mBuffer;
+
+        FadingBlockStandIn(int divisions, Quality quality) {
+            mBandProcessor.setScale(4f, 0f);
+            mBandProcessor.setBandMapping(BandMapper.TYPE_LINEAR, 0, 0);
+            mGeometry.setSize(BAR_LENGTH, BAR_THICKNESS, false);
+            mGeometry.setDivisions(FadingBlockGeometry.getDivisions(
+                    FadingBlockGeometry.validateDivision(divisions), MIN_UNITS,
+                    quality.mUnitDivisor, MAX_CAPTURE_BINS * 2));
+        }
+
+        @Override
+        int getBandCount(int bins) {
+            return mGeometry.getBandCount(bins);
+        }
+
+        @Override
+        void onBandsUpdate(float[] bands, int count) {
+            if (mBuffer == null || mBuffer.size() != count * 4) {
+                mBuffer = new TripleBuffer(count * 4);
+            }
+            mGeometry.setPoints(bands, count, mBuffer.getWriteBuffer());
+            mBuffer.publish();
+        }
+
+        @Override
+        void draw(long now) {
+            if (mBuffer.update()) {
+                sSink += mBuffer.getReadBuffer()[3];
+            }
+        }
+    }
+
+    private static class BeatDetectorStandIn implements Pipeline {
+        private final BeatDetector mDetector = new BeatDetector(new BeatDetector.Callback() {
+            @Override
+            public void onBeat(float strength, float bpm) {
+                sSink += strength + bpm;
+            }
+        });
+
+        @Override
+        public void frame(byte[] fft, long now) {
+            mDetector.onFFTUpdate(fft, now);
+        }
+    }
+
+    /**
+     * The pre FFTSmoother path: one boxed ArrayDeque average per band
+     */
+    private static class LegacyAverageStandIn implements Pipeline {
+        private final LegacyFFTAverage[] mAverages;
+        private int mValue;
+
+        LegacyAverageStandIn(int bands) {
+            mAverages = new LegacyFFTAverage[bands];
+            for (int i = 0; i < bands; i++) {
+                mAverages[i] = new LegacyFFTAverage();
+            }
+        }
+
+        @Override
+        public void frame(byte[] fft, long now) {
+            for (int i = 0; i < mAverages.length; i++) {
+                sSink += mAverages[i].average((mValue++ * 31) & 0xff);
+            }
+        }
+    }
+
+    private static class SmootherStandIn implements Pipeline {
+        private final FFTSmoother mSmoother = new FFTSmoother();
+        private final int mBands;
+        private int mValue;
+
+        SmootherStandIn(int bands) {
+            mBands = bands;
+            mSmoother.setup(bands, FFTSmoother.DEFAULT_WINDOW_LENGTH);
+        }
+
+        @Override
+        public void frame(byte[] fft, long now) {
+            for (int i = 0; i < mBands; i++) {
+                sSink += mSmoother.smooth(i, (mValue++ * 31) & 0xff);
+            }
+        }
+    }
+
+    // FFTAverage as it was before FFTSmoother replaced it
+    private static class LegacyFFTAverage {
+        private static final int WINDOW_LENGTH = 2;
+        private static final float WINDOW_LENGTH_F = WINDOW_LENGTH;
+        private ArrayDeque<Float> window = new ArrayDeque<>(WINDOW_LENGTH);
+        private float average;
+
+        int average(int dB) {
+            if (window.size() >= WINDOW_LENGTH) {
+                Float first = window.pollFirst();
+                if (first != null)
+                    average -= first;
+            }
+            float newValue = dB / WINDOW_LENGTH_F;
+            average += newValue;
+            window.offerLast(newValue);
+            return Math.round(average);
+        }
+    }
+}
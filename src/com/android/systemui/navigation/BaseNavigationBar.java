@@ -223,6 +223,8 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
     public void setControllers(PulseController pulseController) {
         mPulse = pulseController;
         mPulse.setPulseObserver(this);
+        mPulse.setBarAlpha(getAlpha());
+        updatePulseVisibility();
     }
 
     protected PulseController getPulseController()  {
@@ -356,6 +358,13 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
         }
     }
 
+    @Override
+    public void setAudioSessionId(int sessionId) {
+        if (mPulse != null) {
+            mPulse.setAudioSessionId(sessionId);
+        }
+    }
+
     // keep keyguard methods final and use getter to access
     public final void setKeyguardShowing(boolean showing) {
         if (mKeyguardShowing != showing) {
@@ -481,6 +490,35 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
     }
 
     public void setNotificationPanelExpanded(boolean expanded) {
+        if (mPulse != null) {
+            mPulse.setNotificationPanelExpanded(expanded);
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updatePulseVisibility();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updatePulseVisibility();
+    }
+
+    @Override
+    public void setAlpha(float alpha) {
+        super.setAlpha(alpha);
+        if (mPulse != null) {
+            mPulse.setBarAlpha(alpha);
+        }
+    }
+
+    private void updatePulseVisibility() {
+        if (mPulse != null) {
+            mPulse.setBarVisible(getWindowVisibility() == View.VISIBLE && isShown());
+        }
     }
 
     @Override
@@ -697,6 +735,9 @@ public abstract class BaseNavigationBar extends LinearLayout implements Navigato
                         visibilityToString(mCurrentView.getVisibility())));
 
         pw.println("    }");
+        if (mPulse != null) {
+            mPulse.dump(fd, pw, args);
+        }
     }
 
     protected static String viewInfo(View v) {
@@ -77,6 +77,7 @@ public interface Navigator extends PluginListener<NavGesture> {
     public default ButtonDispatcher getAccessibilityButton() { return null; }
     public default void dump(FileDescriptor fd, PrintWriter pw, String[] args) {}
     public default void setMediaPlaying(boolean playing) {}
+    public default void setAudioSessionId(int sessionId) {}
     public default void setNotificationPanelExpanded(boolean expanded) {}
     public default void setPulseColors(boolean colorizedMedia, int[] colors) {}
     public default void setFullGestureMode(boolean mFullGestureMode, boolean dt2sEnabled) {}
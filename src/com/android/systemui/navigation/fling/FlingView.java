@@ -143,6 +143,7 @@ public class FlingView extends BaseNavigationBar {
 
     @Override
     public void setNotificationPanelExpanded(boolean expanded) {
+        super.setNotificationPanelExpanded(expanded);
         mIsNotificationPanelExpanded = expanded;
     }
 
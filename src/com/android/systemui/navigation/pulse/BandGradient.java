@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Cached gradient shader for bar renderers. Either shades each bar from
+ * base to tip, or gives each band its own color by position. Only rebuilt
+ * when the size, orientation or palette changes, never per frame
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Shader;
+
+class BandGradient {
+    static final int MODE_OFF = 0;
+    // from color at the bar base, to color at full height
+    static final int MODE_ALONG_BAR = 1;
+    // from color on the first band, to color on the last
+    static final int MODE_BY_BAND = 2;
+
+    // HSV stops so the gradient walks the same colors as the lava lamp
+    private static final int STOPS = 8;
+
+    private final int[] mColors = new int[STOPS];
+    private final float[] mFrom = new float[3];
+    private final float[] mTo = new float[3];
+    private final float[] mHsv = new float[3];
+
+    /**
+     * @return mode, or MODE_OFF for values this class doesn't know
+     */
+    static int validateMode(int mode) {
+        if (mode < MODE_OFF || mode > MODE_BY_BAND) {
+            return MODE_OFF;
+        }
+        return mode;
+    }
+
+    private Shader mShader;
+    private int mMode;
+    private int mWidth;
+    private int mHeight;
+    private boolean mVertical;
+    private boolean mLeftInLandscape;
+    private int mFromColor;
+    private int mToColor;
+
+    /**
+     * @return the shader for these parameters, the cached one if nothing
+     *         changed, or null if the mode is off or there is no size yet
+     */
+    Shader get(int mode, int width, int height, boolean vertical, boolean leftInLandscape,
+            int fromColor, int toColor) {
+        if (mode == MODE_OFF || width <= 0 || height <= 0) {
+            mShader = null;
+            return null;
+        }
+        if (mShader != null && mode == mMode && width == mWidth && height == mHeight
+                && vertical == mVertical && leftInLandscape == mLeftInLandscape
+                && fromColor == mFromColor && toColor == mToColor) {
+            return mShader;
+        }
+        mMode = mode;
+        mWidth = width;
+        mHeight = height;
+        mVertical = vertical;
+        mLeftInLandscape = leftInLandscape;
+        mFromColor = fromColor;
+        mToColor = toColor;
+
+        Color.colorToHSV(fromColor, mFrom);
+        Color.colorToHSV(toColor, mTo);
+        // HSV has no alpha, carry the colors' own across
+        final int fromAlpha = Color.alpha(fromColor);
+        final int toAlpha = Color.alpha(toColor);
+        for (int i = 0; i < STOPS; i++) {
+            final float fraction = (float) i / (STOPS - 1);
+            mHsv[0] = mFrom[0] + (mTo[0] - mFrom[0]) * fraction;
+            mHsv[1] = mFrom[1] + (mTo[1] - mFrom[1]) * fraction;
+            mHsv[2] = mFrom[2] + (mTo[2] - mFrom[2]) * fraction;
+            mColors[i] = Color.HSVToColor(
+                    Math.round(fromAlpha + (toAlpha - fromAlpha) * fraction), mHsv);
+        }
+
+        float x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+        if (mode == MODE_BY_BAND) {
+            // bands run along the long edge
+            if (vertical) {
+                y1 = height;
+            } else {
+                x1 = width;
+            }
+        } else if (vertical) {
+            // bars grow away from whichever edge they sit on
+            x0 = leftInLandscape ? 0 : width;
+            x1 = leftInLandscape ? width : 0;
+        } else {
+            y0 = height;
+        }
+        mShader = new LinearGradient(x0, y0, x1, y1, mColors, null, Shader.TileMode.CLAMP);
+        return mShader;
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Map FFT bins to the bands a renderer draws. Bin ranges and weights are
+ * computed once per (bins, bands) pair, mapping a frame is then a single
+ * weighted sum per band over flat primitive tables
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+abstract class BandMapper {
+    static final int TYPE_LINEAR = 0;
+    static final int TYPE_LOGARITHMIC = 1;
+    static final int TYPE_MEL = 2;
+
+    // Visualizer doesn't hand us the rate, this is close enough for spacing
+    static final float NOMINAL_SAMPLE_RATE = 44100f;
+
+    private int mBins = -1;
+    private int mBands = -1;
+
+    // per band: first bin, number of bins, offset into mWeights
+    protected int[] mStart = new int[0];
+    protected int[] mLength = new int[0];
+    protected int[] mWeightOffset = new int[0];
+    protected float[] mWeights = new float[0];
+
+    static BandMapper create(int type, int linearFirstBin, int linearStride) {
+        switch (type) {
+            case TYPE_LOGARITHMIC:
+                return new LogBandMapper();
+            case TYPE_MEL:
+                return new MelBandMapper();
+            case TYPE_LINEAR:
+            default:
+                return new LinearBandMapper(linearFirstBin, linearStride);
+        }
+    }
+
+    abstract int getType();
+
+    /**
+     * Smallest FFT bin count that maps bands without losing detail. Mappers
+     * laid out in bin indices rather than frequency need the full capture,
+     * a smaller FFT would move every band to a different frequency
+     */
+    int getMinBins(int bands, int maxBins) {
+        return maxBins;
+    }
+
+    /**
+     * Fill the first bandCount entries of bands from bins
+     */
+    final void map(float[] bins, int binCount, float[] bands, int bandCount) {
+        if (binCount < 2) {
+            for (int b = 0; b < bandCount; b++) {
+                bands[b] = 0f;
+            }
+            return;
+        }
+        if (binCount != mBins || bandCount != mBands) {
+            build(binCount, bandCount);
+        }
+        final int[] start = mStart;
+        final int[] length = mLength;
+        final int[] offset = mWeightOffset;
+        final float[] weights = mWeights;
+        for (int b = 0; b < bandCount; b++) {
+            float sum = 0f;
+            int w = offset[b];
+            final int end = start[b] + length[b];
+            for (int k = start[b]; k < end; k++) {
+                sum += bins[k] * weights[w++];
+            }
+            bands[b] = sum;
+        }
+    }
+
+    private void build(int bins, int bands) {
+        mBins = bins;
+        mBands = bands;
+        if (mStart.length < bands) {
+            mStart = new int[bands];
+            mLength = new int[bands];
+            mWeightOffset = new int[bands];
+        }
+        onBuild(bins, bands);
+    }
+
+    /**
+     * Fill mStart, mLength, mWeightOffset and mWeights for a bins to bands
+     * mapping. Only called when either count changes
+     */
+    protected abstract void onBuild(int bins, int bands);
+
+    protected void ensureWeights(int size) {
+        if (mWeights.length < size) {
+            mWeights = new float[size];
+        }
+    }
+
+    /**
+     * Build tables from band edges expressed in fractional bins. Bands narrower
+     * than a bin interpolate between the two nearest bins, wider bands average
+     * every bin they cover
+     *
+     * @param edges - bands + 1 ascending edges
+     */
+    protected void buildFromEdges(float[] edges, int bins, int bands) {
+        int total = 0;
+        for (int b = 0; b < bands; b++) {
+            final int first = (int) Math.ceil(edges[b]);
+            final int last = Math.min(bins - 1, (int) Math.ceil(edges[b + 1]) - 1);
+            total += Math.max(2, last - first + 1);
+        }
+        ensureWeights(total);
+        int w = 0;
+        for (int b = 0; b < bands; b++) {
+            final int first = (int) Math.ceil(edges[b]);
+            final int last = Math.min(bins - 1, (int) Math.ceil(edges[b + 1]) - 1);
+            mWeightOffset[b] = w;
+            if (last - first + 1 >= 2) {
+                final float weight = 1f / (last - first + 1);
+                mStart[b] = first;
+                mLength[b] = last - first + 1;
+                for (int k = first; k <= last; k++) {
+                    mWeights[w++] = weight;
+                }
+            } else {
+                final float center = Math.min(bins - 1, (edges[b] + edges[b + 1]) / 2);
+                final int k = Math.min(bins - 2, (int) center);
+                final float fraction = Math.max(0f, Math.min(1f, center - k));
+                mStart[b] = k;
+                mLength[b] = 2;
+                mWeights[w++] = 1f - fraction;
+                mWeights[w++] = fraction;
+            }
+        }
+    }
+
+    /**
+     * Evenly spaced single bins. With a positive stride bands read bin
+     * firstBin + i * stride, otherwise the stride spreads bands over the capture
+     */
+    static class LinearBandMapper extends BandMapper {
+        private final int mFirstBin;
+        private final int mStride;
+
+        LinearBandMapper(int firstBin, int stride) {
+            mFirstBin = Math.max(0, firstBin);
+            mStride = stride;
+        }
+
+        @Override
+        int getType() {
+            return TYPE_LINEAR;
+        }
+
+        @Override
+        int getMinBins(int bands, int maxBins) {
+            // a fixed stride addresses bins by index, so it needs the full
+            // capture to keep each band on its frequency. Spread bands cover
+            // the same range at any size, one bin per band is enough
+            return mStride > 0 ? maxBins : Math.min(maxBins, mFirstBin + bands);
+        }
+
+        @Override
+        protected void onBuild(int bins, int bands) {
+            final int stride = mStride > 0 ? mStride
+                    : Math.max(1, (bins - mFirstBin) / Math.max(1, bands));
+            ensureWeights(bands);
+            for (int b = 0; b < bands; b++) {
+                mStart[b] = Math.min(bins - 1, mFirstBin + b * stride);
+                mLength[b] = 1;
+                mWeightOffset[b] = b;
+                mWeights[b] = 1f;
+            }
+        }
+    }
+
+    /**
+     * Logarithmically spaced bands from the first non DC bin to Nyquist
+     */
+    static class LogBandMapper extends BandMapper {
+        private float[] mEdges = new float[0];
+
+        @Override
+        int getType() {
+            return TYPE_LOGARITHMIC;
+        }
+
+        @Override
+        protected void onBuild(int bins, int bands) {
+            if (mEdges.length < bands + 1) {
+                mEdges = new float[bands + 1];
+            }
+            final double low = Math.log(1);
+            final double high = Math.log(Math.max(2, bins));
+            for (int b = 0; b <= bands; b++) {
+                mEdges[b] = (float) Math.exp(low + (high - low) * b / bands);
+            }
+            buildFromEdges(mEdges, bins, bands);
+        }
+    }
+
+    /**
+     * Mel spaced bands, closer to how we hear pitch than plain log spacing
+     */
+    static class MelBandMapper extends BandMapper {
+        private static final float MIN_FREQUENCY = 20f;
+
+        private float[] mEdges = new float[0];
+
+        @Override
+        int getType() {
+            return TYPE_MEL;
+        }
+
+        @Override
+        int getMinBins(int bands, int maxBins) {
+            // enough resolution that the low bands still span whole bins
+            return Math.min(maxBins, bands * 4);
+        }
+
+        @Override
+        protected void onBuild(int bins, int bands) {
+            if (mEdges.length < bands + 1) {
+                mEdges = new float[bands + 1];
+            }
+            // bin k sits at k * rate / (2 * bins)
+            final float binWidth = NOMINAL_SAMPLE_RATE / (2f * bins);
+            final double low = toMel(Math.max(MIN_FREQUENCY, binWidth));
+            final double high = toMel(NOMINAL_SAMPLE_RATE / 2f);
+            for (int b = 0; b <= bands; b++) {
+                mEdges[b] = (float) (fromMel(low + (high - low) * b / bands) / binWidth);
+            }
+            buildFromEdges(mEdges, bins, bands);
+        }
+
+        private static double toMel(double hz) {
+            return 2595.0 * Math.log10(1.0 + hz / 700.0);
+        }
+
+        private static double fromMel(double mel) {
+            return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+        }
+    }
+}
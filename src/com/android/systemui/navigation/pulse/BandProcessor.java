@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Spectrum stages every FFT renderer runs on the PulseProcessor thread:
+ * decode bins through the pre-scaled dB table, map bins to bands, then
+ * smooth. Configured from the UI thread, the stages only change state on
+ * the processing thread. No Android dependencies, the benchmark runs it as is
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class BandProcessor {
+    private final FFTDbTable mDbTable = new FFTDbTable();
+    private final FFTSmoother mSmoother = new FFTSmoother();
+    private volatile BandMapper mBandMapper;
+    private float[] mBins = new float[0];
+    private float[] mBands = new float[0];
+
+    // written on the UI thread, the smoother only changes on the processing thread
+    private volatile boolean mSmoothingEnabled;
+    private volatile int mSmoothingMode = FFTSmoother.MODE_MOVING_AVERAGE;
+    private volatile int mSmoothingWindow = FFTSmoother.DEFAULT_WINDOW_LENGTH;
+    private volatile boolean mSmootherResetPending;
+
+    /**
+     * @see FFTDbTable#setScale(float, float)
+     */
+    void setScale(float scale, float offset) {
+        mDbTable.setScale(scale, offset);
+    }
+
+    /**
+     * Configure the smoothing stage. Any thread, the smoother picks it up
+     * on the next capture. Turning smoothing off drops its history
+     */
+    void setSmoothing(boolean enabled, int mode, int windowLength) {
+        mSmoothingMode = mode;
+        mSmoothingWindow = windowLength;
+        mSmoothingEnabled = enabled;
+        if (!enabled) {
+            mSmootherResetPending = true;
+        }
+    }
+
+    /**
+     * Select a BandMapper type. The linear mapper reads single bins starting at
+     * linearFirstBin, linearStride apart (0 spreads the bands over the capture)
+     */
+    void setBandMapping(int type, int linearFirstBin, int linearStride) {
+        final BandMapper mapper = mBandMapper;
+        if (mapper == null || mapper.getType() != type) {
+            mBandMapper = BandMapper.create(type, linearFirstBin, linearStride);
+        }
+    }
+
+    BandMapper getBandMapper() {
+        return mBandMapper;
+    }
+
+    /**
+     * Processing thread
+     *
+     * @param fft - Visualizer FFT capture, real and imaginary bytes per bin
+     * @param bandCount - bands to produce
+     * @return bands scaled to pixels, the first bandCount entries are valid.
+     * Reused on the next call
+     */
+    float[] process(byte[] fft, int bandCount) {
+        final int bins = fft.length / 2;
+        if (mBins.length != bins) {
+            mBins = new float[bins];
+        }
+        mDbTable.decode(fft, mBins);
+
+        if (mBands.length < bandCount) {
+            mBands = new float[bandCount];
+        }
+        final BandMapper mapper = mBandMapper;
+        if (mapper != null) {
+            mapper.map(mBins, bins, mBands, bandCount);
+        }
+
+        if (mSmootherResetPending) {
+            mSmootherResetPending = false;
+            mSmoother.reset();
+        }
+        if (mSmoothingEnabled) {
+            mSmoother.setMode(mSmoothingMode);
+            mSmoother.setup(bandCount, mSmoothingWindow);
+            mSmoother.smooth(mBands, bandCount);
+        }
+        return mBands;
+    }
+}
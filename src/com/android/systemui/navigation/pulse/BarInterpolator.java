@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Animate every bar from one clock. Replaces a ValueAnimator per bar with
+ * flat from/to/start time arrays that are advanced in a single pass per frame
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class BarInterpolator {
+    // same duration the per bar ValueAnimators used
+    static final long DEFAULT_DURATION = 128;
+
+    private long mDuration = DEFAULT_DURATION;
+    private int mCount;
+    private float[] mFrom = new float[0];
+    private float[] mTo = new float[0];
+    private float[] mCurrent = new float[0];
+    private long[] mStartTime = new long[0];
+
+    void setup(int count) {
+        count = Math.max(0, count);
+        if (mCurrent.length < count) {
+            mFrom = new float[count];
+            mTo = new float[count];
+            mCurrent = new float[count];
+            mStartTime = new long[count];
+        }
+        mCount = count;
+    }
+
+    void setDuration(long millis) {
+        mDuration = Math.max(0, millis);
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Jump every bar to the values in points without animating, e.g. after a
+     * size change moved the bar bases
+     */
+    void reset(float[] points, int offset, int stride) {
+        for (int i = 0; i < mCount; i++) {
+            final float value = points[offset + i * stride];
+            mFrom[i] = mTo[i] = mCurrent[i] = value;
+            mStartTime[i] = 0;
+        }
+    }
+
+    /**
+     * Start animating a bar from wherever it currently is towards target
+     */
+    void animateTo(int bar, float target, long now) {
+        mFrom[bar] = mCurrent[bar];
+        mTo[bar] = target;
+        mStartTime[bar] = now;
+    }
+
+    /**
+     * Advance all bars to now and write them into points
+     *
+     * @return true if any bar is still moving and wants another frame
+     */
+    boolean advance(long now, float[] points, int offset, int stride) {
+        boolean running = false;
+        for (int i = 0; i < mCount; i++) {
+            final long elapsed = now - mStartTime[i];
+            if (mDuration == 0 || elapsed >= mDuration) {
+                mCurrent[i] = mTo[i];
+            } else {
+                final float fraction = elapsed <= 0 ? 0f : (float) elapsed / mDuration;
+                mCurrent[i] = mFrom[i] + (mTo[i] - mFrom[i]) * ease(fraction);
+                running = true;
+            }
+            points[offset + i * stride] = mCurrent[i];
+        }
+        return running;
+    }
+
+    // AccelerateDecelerateInterpolator, the ValueAnimator default
+    private static float ease(float input) {
+        return (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+    }
+}
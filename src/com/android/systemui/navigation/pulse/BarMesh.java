@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * All solid line bars as one triangle mesh for a single drawVertices call.
+ * Indices and bar bases are built once per layout, a frame only moves the
+ * tip vertices of bars whose height changed. No Android dependencies, the
+ * caller hands the arrays to the canvas
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class BarMesh {
+    static final int CAP_FLAT = 1;
+    static final int CAP_ROUND = 2;
+    // fades from the bar color at the base to transparent at the tip
+    static final int CAP_GRADIENT = 3;
+
+    private static final int ROUND_SEGMENTS = 6;
+    // base left, base right, tip left, tip right
+    private static final int QUAD_VERTICES = 4;
+
+    private int mCap = CAP_FLAT;
+    private int mBars;
+    private int mVerticesPerBar;
+    private boolean mAlongX;
+    private float mGrowth;
+    private float mHalfThickness;
+
+    private float[] mVerts = new float[0];
+    private int[] mColors = new int[0];
+    private short[] mIndices = new short[0];
+    private int mIndexCount;
+    // per bar: cross axis center, and the tip last written
+    private float[] mCenters = new float[0];
+    private float[] mTips = new float[0];
+    // unit circle offsets for the round cap, left to right
+    private final float[] mCapCos = new float[ROUND_SEGMENTS + 1];
+    private final float[] mCapSin = new float[ROUND_SEGMENTS + 1];
+    private int mColor;
+    private boolean mColorsValid;
+
+    BarMesh() {
+        for (int s = 0; s <= ROUND_SEGMENTS; s++) {
+            final double angle = Math.PI - Math.PI * s / ROUND_SEGMENTS;
+            mCapCos[s] = (float) Math.cos(angle);
+            mCapSin[s] = (float) Math.sin(angle);
+        }
+    }
+
+    /**
+     * Lay out bars from drawLines style points, the animated end of each
+     * line is the tip and the other end the base
+     *
+     * @param alongX - bars grow along x (vertical navbar)
+     * @param growth - 1 if bars grow towards larger coordinates, -1 otherwise
+     */
+    void setup(float[] points, int bars, float thickness, boolean alongX, float growth,
+            int cap) {
+        mCap = cap;
+        mBars = bars;
+        mAlongX = alongX;
+        mGrowth = growth;
+        mHalfThickness = thickness / 2;
+        // the round cap adds a center and an arc, the arc ends are the tip corners
+        mVerticesPerBar = QUAD_VERTICES + (cap == CAP_ROUND ? ROUND_SEGMENTS : 0);
+        final int vertices = bars * mVerticesPerBar;
+        if (mVerts.length < vertices * 2) {
+            mVerts = new float[vertices * 2];
+            mColors = new int[vertices];
+        }
+        if (mCenters.length < bars) {
+            mCenters = new float[bars];
+            mTips = new float[bars];
+        }
+        final int indicesPerBar = 6 + (cap == CAP_ROUND ? ROUND_SEGMENTS * 3 : 0);
+        if (mIndices.length < bars * indicesPerBar) {
+            mIndices = new short[bars * indicesPerBar];
+        }
+
+        int index = 0;
+        for (int i = 0; i < bars; i++) {
+            final int v = i * mVerticesPerBar;
+            final float center = alongX ? points[i * 4 + 1] : points[i * 4];
+            final float base = alongX ? points[i * 4 + 2] : points[i * 4 + 3];
+            mCenters[i] = center;
+            setVertex(v, center - mHalfThickness, base);
+            setVertex(v + 1, center + mHalfThickness, base);
+            writeTip(i, alongX ? points[i * 4] : points[i * 4 + 1]);
+
+            mIndices[index++] = (short) v;
+            mIndices[index++] = (short) (v + 1);
+            mIndices[index++] = (short) (v + 2);
+            mIndices[index++] = (short) (v + 1);
+            mIndices[index++] = (short) (v + 3);
+            mIndices[index++] = (short) (v + 2);
+            if (cap == CAP_ROUND) {
+                // fan around the cap center: tip left, arc, tip right
+                final int capCenter = v + QUAD_VERTICES;
+                for (int s = 0; s < ROUND_SEGMENTS; s++) {
+                    mIndices[index++] = (short) capCenter;
+                    mIndices[index++] = (short) arcVertex(v, s);
+                    mIndices[index++] = (short) arcVertex(v, s + 1);
+                }
+            }
+        }
+        mIndexCount = index;
+        mColorsValid = false;
+    }
+
+    // arc point s of bar vertex block v, the ends are the quad's tip corners
+    private static int arcVertex(int v, int s) {
+        if (s == 0) {
+            return v + 2;
+        } else if (s == ROUND_SEGMENTS) {
+            return v + 3;
+        }
+        return v + QUAD_VERTICES + s;
+    }
+
+    /**
+     * Move the tips of bars that changed since the last update
+     */
+    void update(float[] points) {
+        final int offset = mAlongX ? 0 : 1;
+        for (int i = 0; i < mBars; i++) {
+            final float tip = points[i * 4 + offset];
+            if (tip != mTips[i]) {
+                writeTip(i, tip);
+            }
+        }
+    }
+
+    private void writeTip(int bar, float tip) {
+        final int v = bar * mVerticesPerBar;
+        final float center = mCenters[bar];
+        mTips[bar] = tip;
+        setVertex(v + 2, center - mHalfThickness, tip);
+        setVertex(v + 3, center + mHalfThickness, tip);
+        if (mCap == CAP_ROUND) {
+            setVertex(v + QUAD_VERTICES, center, tip);
+            for (int s = 1; s < ROUND_SEGMENTS; s++) {
+                setVertex(v + QUAD_VERTICES + s, center + mCapCos[s] * mHalfThickness,
+                        tip + mGrowth * mCapSin[s] * mHalfThickness);
+            }
+        }
+    }
+
+    private void setVertex(int vertex, float cross, float along) {
+        mVerts[vertex * 2] = mAlongX ? along : cross;
+        mVerts[vertex * 2 + 1] = mAlongX ? cross : along;
+    }
+
+    /**
+     * Vertex colors, only rebuilt when the color changes
+     */
+    void setColor(int color) {
+        if (mColorsValid && color == mColor) {
+            return;
+        }
+        mColor = color;
+        mColorsValid = true;
+        final int tipColor = mCap == CAP_GRADIENT ? color & 0x00ffffff : color;
+        for (int i = 0; i < mBars; i++) {
+            final int v = i * mVerticesPerBar;
+            for (int k = 0; k < mVerticesPerBar; k++) {
+                // the two base vertices come first
+                mColors[v + k] = k < 2 ? color : tipColor;
+            }
+        }
+    }
+
+    /**
+     * @return vertexCount for drawVertices(), the number of used floats in
+     *         getVertices()
+     */
+    int getVertexCount() {
+        return mBars * mVerticesPerBar * 2;
+    }
+
+    float[] getVertices() {
+        return mVerts;
+    }
+
+    int[] getColors() {
+        return mColors;
+    }
+
+    short[] getIndices() {
+        return mIndices;
+    }
+
+    int getIndexCount() {
+        return mIndexCount;
+    }
+}
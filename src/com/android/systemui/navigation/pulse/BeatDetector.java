@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Spectral flux onset detection on the FFT stream. Each frame's rise in
+ * magnitude over the previous one is compared against the mean plus a few
+ * deviations of a fixed history ring. Tempo comes from a decaying histogram
+ * of the intervals between recent onsets, folded into one octave of BPM.
+ * Runs on the processing thread, nothing is allocated per frame
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.util.Arrays;
+
+class BeatDetector {
+    interface Callback {
+        /**
+         * Processing thread
+         *
+         * @param strength - flux over the threshold, 1 and up
+         * @param bpm - tempo estimate, 0 until there is one
+         */
+        void onBeat(float strength, float bpm);
+    }
+
+    // about a second and a half at the default capture rate
+    private static final int FLUX_HISTORY = 24;
+    private static final float THRESHOLD_DEVIATIONS = 1.5f;
+    // ignore flux from near silence
+    private static final float MIN_FLUX = 4f;
+    // nothing musical is faster than 300 bpm
+    private static final long MIN_ONSET_INTERVAL_MILLIS = 200;
+
+    private static final int ONSET_HISTORY = 16;
+    private static final long MAX_IOI_MILLIS = 2000;
+    private static final int MIN_BPM = 60;
+    private static final int MAX_BPM = 180;
+    private static final float HISTOGRAM_DECAY = 0.9f;
+    // share of the histogram the peak needs before it counts as a tempo
+    private static final float MIN_TEMPO_CONFIDENCE = 0.2f;
+
+    private final Callback mCallback;
+
+    private float[] mMagnitudes = new float[0];
+    private final float[] mFlux = new float[FLUX_HISTORY];
+    private int mFluxHead;
+    private int mFluxCount;
+    private float mFluxSum;
+    private float mFluxSumSquares;
+
+    private final long[] mOnsets = new long[ONSET_HISTORY];
+    private int mOnsetHead;
+    private int mOnsetCount;
+    private final float[] mTempoHistogram = new float[MAX_BPM - MIN_BPM];
+    private volatile float mBpm;
+    private volatile boolean mResetPending;
+
+    BeatDetector(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Start over on the next frame, e.g. for a new stream. Any thread
+     */
+    void reset() {
+        mResetPending = true;
+    }
+
+    /**
+     * @return tempo estimate in beats per minute, 0 if there is none
+     */
+    float getBpm() {
+        return mBpm;
+    }
+
+    /**
+     * Processing thread
+     *
+     * @param fft - Visualizer FFT capture, real and imaginary bytes per bin
+     * @param nowMillis - capture time
+     */
+    void onFFTUpdate(byte[] fft, long nowMillis) {
+        final int bins = fft.length / 2;
+        if (mResetPending || mMagnitudes.length != bins) {
+            mResetPending = false;
+            doReset(bins);
+        }
+        // bin 0 packs DC and Nyquist, skip it
+        float flux = 0f;
+        for (int k = 1; k < bins; k++) {
+            final float re = fft[k * 2];
+            final float im = fft[k * 2 + 1];
+            final float magnitude = (float) Math.sqrt(re * re + im * im);
+            final float rise = magnitude - mMagnitudes[k];
+            if (rise > 0f) {
+                flux += rise;
+            }
+            mMagnitudes[k] = magnitude;
+        }
+
+        final boolean full = mFluxCount == FLUX_HISTORY;
+        final float mean = mFluxCount == 0 ? 0f : mFluxSum / mFluxCount;
+        final float variance = mFluxCount == 0 ? 0f
+                : Math.max(0f, mFluxSumSquares / mFluxCount - mean * mean);
+        final float threshold = mean + THRESHOLD_DEVIATIONS * (float) Math.sqrt(variance);
+        pushFlux(flux);
+
+        if (!full || flux < MIN_FLUX || flux <= threshold) {
+            return;
+        }
+        final long last = mOnsetCount == 0 ? 0
+                : mOnsets[(mOnsetHead - 1 + ONSET_HISTORY) % ONSET_HISTORY];
+        if (mOnsetCount > 0 && nowMillis - last < MIN_ONSET_INTERVAL_MILLIS) {
+            return;
+        }
+        updateTempo(nowMillis);
+        mCallback.onBeat(threshold > 0f ? flux / threshold : 1f, mBpm);
+    }
+
+    private void pushFlux(float flux) {
+        if (mFluxCount == FLUX_HISTORY) {
+            final float oldest = mFlux[mFluxHead];
+            mFluxSum -= oldest;
+            mFluxSumSquares -= oldest * oldest;
+        } else {
+            mFluxCount++;
+        }
+        mFlux[mFluxHead] = flux;
+        mFluxSum += flux;
+        mFluxSumSquares += flux * flux;
+        mFluxHead = (mFluxHead + 1) % FLUX_HISTORY;
+    }
+
+    /**
+     * Vote for the interval from every recent onset to this one, folded into
+     * [MIN_BPM, MAX_BPM) so half and double time land on the same tempo
+     */
+    private void updateTempo(long nowMillis) {
+        for (int i = 0; i < mTempoHistogram.length; i++) {
+            mTempoHistogram[i] *= HISTOGRAM_DECAY;
+        }
+        for (int i = 1; i <= mOnsetCount; i++) {
+            final long interval = nowMillis
+                    - mOnsets[(mOnsetHead - i + ONSET_HISTORY) % ONSET_HISTORY];
+            if (interval > MAX_IOI_MILLIS) {
+                break;
+            }
+            float bpm = 60000f / interval;
+            while (bpm < MIN_BPM) {
+                bpm *= 2f;
+            }
+            while (bpm >= MAX_BPM) {
+                bpm /= 2f;
+            }
+            // closer onsets say more about the beat than far ones
+            mTempoHistogram[(int) bpm - MIN_BPM] += 1f / i;
+        }
+        mOnsets[mOnsetHead] = nowMillis;
+        mOnsetHead = (mOnsetHead + 1) % ONSET_HISTORY;
+        mOnsetCount = Math.min(mOnsetCount + 1, ONSET_HISTORY);
+
+        int peak = 0;
+        float total = 0f;
+        for (int i = 0; i < mTempoHistogram.length; i++) {
+            total += mTempoHistogram[i];
+            if (mTempoHistogram[i] > mTempoHistogram[peak]) {
+                peak = i;
+            }
+        }
+        if (total == 0f) {
+            mBpm = 0f;
+            return;
+        }
+        // neighbours vote too, 1 bpm bins split a real tempo between two of them
+        final float below = peak > 0 ? mTempoHistogram[peak - 1] : 0f;
+        final float above = peak < mTempoHistogram.length - 1 ? mTempoHistogram[peak + 1] : 0f;
+        final float weight = below + mTempoHistogram[peak] + above;
+        if (weight / total < MIN_TEMPO_CONFIDENCE) {
+            mBpm = 0f;
+            return;
+        }
+        mBpm = MIN_BPM + peak + 0.5f + (above - below) / weight;
+    }
+
+    private void doReset(int bins) {
+        if (mMagnitudes.length != bins) {
+            mMagnitudes = new float[bins];
+        } else {
+            Arrays.fill(mMagnitudes, 0f);
+        }
+        mFluxHead = 0;
+        mFluxCount = 0;
+        mFluxSum = 0f;
+        mFluxSumSquares = 0f;
+        mOnsetHead = 0;
+        mOnsetCount = 0;
+        Arrays.fill(mTempoHistogram, 0f);
+        mBpm = 0f;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Holds on to an offscreen ARGB_8888 buffer across size changes. A request
+ * that fits in the current allocation reconfigures it in place, so rotating
+ * the bar (w x h -> h x w) or shrinking it never allocates
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+
+class BitmapPool {
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private Bitmap mBitmap;
+
+    /**
+     * @return a cleared, mutable bitmap of exactly width x height
+     */
+    Bitmap acquire(int width, int height) {
+        final Bitmap bitmap = mBitmap;
+        if (bitmap != null && !bitmap.isRecycled()) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+            if ((long) width * height * BYTES_PER_PIXEL <= bitmap.getAllocationByteCount()) {
+                bitmap.reconfigure(width, height, Config.ARGB_8888);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+            bitmap.recycle();
+        }
+        mBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+        return mBitmap;
+    }
+
+    /**
+     * Free the native allocation now instead of waiting on GC. Anything
+     * previously acquired must not be drawn after this
+     */
+    void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+}
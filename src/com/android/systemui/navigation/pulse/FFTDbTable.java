@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Magnitude to dB lookup for Visualizer FFT bins. Real and imaginary parts
+ * arrive as signed bytes, so the squared magnitude can never exceed
+ * 2 * 128 * 128 and every possible dB value fits in a small table
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class FFTDbTable {
+    static final int MAX_MAGNITUDE = 2 * 128 * 128;
+
+    // built on first use, shared by every renderer
+    private static class Holder {
+        static final int[] DB_TABLE = buildDbTable();
+    }
+
+    // only touched by the thread calling setScale()
+    private float mScale = Float.NaN;
+    private float mOffset = Float.NaN;
+    // replaced, never written in place, so a capture being decoded keeps
+    // reading one consistent table while the UI thread rescales
+    private volatile float[] mScaledTable = new float[MAX_MAGNITUDE + 1];
+
+    /**
+     * @return 10 * log10(rfk^2 + ifk^2) truncated to whole dB, 0 for silence
+     */
+    static int dB(byte rfk, byte ifk) {
+        return Holder.DB_TABLE[rfk * rfk + ifk * ifk];
+    }
+
+    static int[] getDbTable() {
+        return Holder.DB_TABLE;
+    }
+
+    /**
+     * Pre-scaled variant with a renderer's fudge factor folded in:
+     * dB(rfk, ifk) * scale + offset
+     */
+    float scaled(byte rfk, byte ifk) {
+        return mScaledTable[rfk * rfk + ifk * ifk];
+    }
+
+    /**
+     * Decode a whole capture through the pre-scaled table. Bin k comes from
+     * the byte pair at 2k, 2k + 1
+     */
+    void decode(byte[] fft, float[] out) {
+        final int bins = Math.min(out.length, fft.length / 2);
+        final float[] table = mScaledTable;
+        for (int k = 0, j = 0; k < bins; k++, j += 2) {
+            final byte rfk = fft[j];
+            final byte ifk = fft[j + 1];
+            out[k] = table[rfk * rfk + ifk * ifk];
+        }
+    }
+
+    /**
+     * Rebuild the pre-scaled table. Cheap to call repeatedly, it only does
+     * work when the factors actually change. Safe to call while another
+     * thread decodes, the new table is published once it is complete
+     */
+    void setScale(float scale, float offset) {
+        if (mScale == scale && mOffset == offset) {
+            return;
+        }
+        mScale = scale;
+        mOffset = offset;
+        final int[] table = Holder.DB_TABLE;
+        final float[] scaled = new float[table.length];
+        for (int i = 0; i < table.length; i++) {
+            scaled[i] = table[i] * scale + offset;
+        }
+        mScaledTable = scaled;
+    }
+
+    private static int[] buildDbTable() {
+        final int[] table = new int[MAX_MAGNITUDE + 1];
+        for (int i = 1; i < table.length; i++) {
+            table[i] = (int) (10 * Math.log10(i));
+        }
+        return table;
+    }
+}
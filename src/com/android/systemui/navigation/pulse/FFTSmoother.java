@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Smooth per band magnitudes across frames. All state for every band lives
+ * in flat primitive arrays so nothing is allocated once the engine is set up
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class FFTSmoother {
+    static final int MODE_MOVING_AVERAGE = 0;
+    static final int MODE_EXPONENTIAL = 1;
+    static final int MODE_ATTACK_RELEASE = 2;
+
+    static final int DEFAULT_WINDOW_LENGTH = 2;
+    static final int MAX_WINDOW_LENGTH = 16;
+
+    private static final float DEFAULT_ATTACK = 0.8f;
+    private static final float DEFAULT_RELEASE = 0.25f;
+
+    private int mMode = MODE_MOVING_AVERAGE;
+    private int mBands;
+    private int mWindowLength = DEFAULT_WINDOW_LENGTH;
+    private float mAlpha = 2f / (DEFAULT_WINDOW_LENGTH + 1);
+    private float mAttack = DEFAULT_ATTACK;
+    private float mRelease = DEFAULT_RELEASE;
+
+    // moving average: mWindow holds mWindowLength pre-divided samples per band
+    private float[] mWindow = new float[0];
+    private int[] mHead = new int[0];
+    private int[] mFilled = new int[0];
+    // running sum for moving average, last output for the recursive modes
+    private float[] mState = new float[0];
+
+    FFTSmoother() {
+        this(0, DEFAULT_WINDOW_LENGTH, MODE_MOVING_AVERAGE);
+    }
+
+    FFTSmoother(int bands, int windowLength, int mode) {
+        mMode = validateMode(mode);
+        setup(bands, windowLength);
+    }
+
+    /**
+     * Size the engine for a band count and window length. Buffers are only
+     * reallocated when they need to grow
+     */
+    void setup(int bands, int windowLength) {
+        bands = Math.max(0, bands);
+        windowLength = Math.max(1, Math.min(MAX_WINDOW_LENGTH, windowLength));
+        if (bands == mBands && windowLength == mWindowLength) {
+            return;
+        }
+        mBands = bands;
+        mWindowLength = windowLength;
+        mAlpha = 2f / (windowLength + 1);
+        if (mState.length < bands) {
+            mState = new float[bands];
+            mHead = new int[bands];
+            mFilled = new int[bands];
+        }
+        if (mWindow.length < bands * windowLength) {
+            mWindow = new float[bands * windowLength];
+        }
+        reset();
+    }
+
+    void setMode(int mode) {
+        mode = validateMode(mode);
+        if (mMode != mode) {
+            mMode = mode;
+            reset();
+        }
+    }
+
+    /**
+     * @param attack - fraction of a rise applied per frame, 0..1
+     * @param release - fraction of a fall applied per frame, 0..1
+     */
+    void setAttackRelease(float attack, float release) {
+        mAttack = Math.max(0f, Math.min(1f, attack));
+        mRelease = Math.max(0f, Math.min(1f, release));
+    }
+
+    int getBands() {
+        return mBands;
+    }
+
+    int getWindowLength() {
+        return mWindowLength;
+    }
+
+    int getMode() {
+        return mMode;
+    }
+
+    void reset() {
+        for (int i = 0; i < mBands; i++) {
+            mState[i] = 0f;
+            mHead[i] = 0;
+            mFilled[i] = 0;
+        }
+    }
+
+    /**
+     * Feed one whole dB value for a band and return the smoothed value
+     * rounded back to whole dB
+     */
+    int smooth(int band, int dB) {
+        return Math.round(smooth(band, (float) dB));
+    }
+
+    float smooth(int band, float value) {
+        switch (mMode) {
+            case MODE_EXPONENTIAL:
+                mState[band] += (value - mState[band]) * mAlpha;
+                return mState[band];
+            case MODE_ATTACK_RELEASE:
+                final float delta = value - mState[band];
+                mState[band] += delta * (delta > 0 ? mAttack : mRelease);
+                return mState[band];
+            case MODE_MOVING_AVERAGE:
+            default:
+                // waiting until window is full before dropping old values
+                final int offset = band * mWindowLength;
+                final int head = mHead[band];
+                if (mFilled[band] >= mWindowLength) {
+                    mState[band] -= mWindow[offset + head];
+                } else {
+                    mFilled[band]++;
+                }
+                final float newValue = value / mWindowLength;
+                mState[band] += newValue;
+                mWindow[offset + head] = newValue;
+                mHead[band] = head + 1 == mWindowLength ? 0 : head + 1;
+                return mState[band];
+        }
+    }
+
+    /**
+     * Smooth the first count values in place
+     */
+    void smooth(float[] values, int count) {
+        count = Math.min(count, mBands);
+        for (int i = 0; i < count; i++) {
+            values[i] = smooth(i, values[i]);
+        }
+    }
+
+    private static int validateMode(int mode) {
+        if (mode < MODE_MOVING_AVERAGE || mode > MODE_ATTACK_RELEASE) {
+            return MODE_MOVING_AVERAGE;
+        }
+        return mode;
+    }
+}
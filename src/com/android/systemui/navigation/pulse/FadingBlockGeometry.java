@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Block layout for FadingBlockRenderer: divisions under the current quality
+ * and one line per band in drawLines() order. Points are written on the
+ * processing thread. No Android dependencies, the benchmark runs it as is
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class FadingBlockGeometry {
+    static final int MAX_DIVISIONS = 44;
+
+    private volatile int mDivisions = 16;
+    private volatile int mWidth;
+    private volatile int mHeight;
+    private volatile boolean mVertical;
+    private volatile boolean mLeftInLandscape;
+
+    static int validateDivision(int val) {
+        // if a bad value was passed from settings (not divisible by 2)
+        // reset to default value of 16. Validate range.
+        if (val % 2 != 0) {
+            val = 16;
+        }
+        return Math.max(2, Math.min(MAX_DIVISIONS, val));
+    }
+
+    /**
+     * @param maxBands - bands the largest capture yields at one division
+     * @return divisions for the user's value under the quality limits
+     */
+    static int getDivisions(int userDivisions, int minUnits, int unitDivisor, int maxBands) {
+        // wider divisions draw fewer blocks, but keep at least minUnits of them
+        int divisions = Math.min(MAX_DIVISIONS, userDivisions * unitDivisor);
+        while (divisions > userDivisions && maxBands / divisions < minUnits) {
+            divisions /= 2;
+        }
+        return Math.max(userDivisions, divisions - divisions % 2);
+    }
+
+    void setDivisions(int divisions) {
+        mDivisions = divisions;
+    }
+
+    void setSize(int width, int height, boolean leftInLandscape) {
+        mWidth = width;
+        mHeight = height;
+        mVertical = height > width;
+        mLeftInLandscape = leftInLandscape;
+    }
+
+    boolean isVertical() {
+        return mVertical;
+    }
+
+    int getBandCount(int bins) {
+        // one band every mDivisions bytes of capture
+        return bins * 2 / mDivisions;
+    }
+
+    /**
+     * Lay out one line per band into points, four floats each
+     */
+    void setPoints(float[] bands, int count, float[] points) {
+        final int divisions = mDivisions;
+        final int width = mWidth;
+        final int height = mHeight;
+        final boolean leftInLandscape = mLeftInLandscape;
+        if (mVertical) {
+            for (int i = 0; i < count; i++) {
+                points[i * 4 + 1] = i * 4 * divisions;
+                points[i * 4 + 3] = i * 4 * divisions;
+                points[i * 4] = leftInLandscape ? 0 : width;
+                points[i * 4 + 2] = leftInLandscape ? bands[i] : (width - bands[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                points[i * 4] = i * 4 * divisions;
+                points[i * 4 + 2] = i * 4 * divisions;
+                points[i * 4 + 1] = height;
+                points[i * 4 + 3] = height - bands[i];
+            }
+        }
+    }
+}
@@ -27,63 +27,71 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuff.Mode;
 import android.graphics.PorterDuffXfermode;
-import android.graphics.Bitmap.Config;
 import android.graphics.PorterDuff.Mode;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.TypedValue;
+import android.view.DisplayListCanvas;
+import android.view.RenderNode;
 
-import com.android.internal.util.NotificationColorUtil;
 import com.android.systemui.R;
 import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
-import com.android.systemui.navigation.utils.ColorAnimator;
 
-public class FadingBlockRenderer extends Renderer implements ColorAnimator.ColorAnimationListener {
+public class FadingBlockRenderer extends Renderer implements RendererColors.Callback {
     //private static final int DEF_PAINT_ALPHA = (byte) 188;
-    private byte[] mFFTBytes;
+    // frames replayed by the hardware fade trail. Every one is a dashed
+    // drawLines re-recorded per processed frame, so the tail is cut well
+    // before it fades out at high opacities. At the default opacity the
+    // eighth frame is already below 2% alpha
+    private static final int MAX_TRAIL_FRAMES = 8;
+
     private Paint mPaint;
     private Paint mFadePaint;
-    private boolean mVertical;
     private boolean mLeftInLandscape;
-    private FFTAverage[] mFFTAverage;
-    private float[] mFFTPoints;
-    private byte rfk, ifk;
-    private int dbValue;
-    private float magnitude;
-    private int mDivisions;
-    private int mAccentColor;
-    private int mUserColor;
-    private int mAlbumColor = -1;
-    private boolean mAutoColor;
+    private final FadingBlockGeometry mGeometry = new FadingBlockGeometry();
+    // line points handed from the processing thread to draw()
+    private volatile TripleBuffer mPointsBuffer;
+    // divisions from settings, coarser ones are drawn while over the frame budget
+    private int mUserDivisions;
     private int mDbFuzzFactor;
     private int mDbFuzz;
     private int mPathEffect1;
     private int mPathEffect2;
+    private final BitmapPool mBitmapPool = new BitmapPool();
+    // offscreen fade trail, acquired lazily on the first draw after a link
     private Bitmap mCanvasBitmap;
-    private Canvas mCanvas;
+    private final Canvas mCanvas = new Canvas();
+    // hardware path: recent frames replayed into a RenderNode with decaying
+    // alpha, so the trail is rasterized and composited on the RenderThread
+    private RenderNode mTrailNode;
+    private final Paint mTrailPaint = new Paint();
+    private final float[][] mTrail = new float[MAX_TRAIL_FRAMES][];
+    private final int[] mTrailColors = new int[MAX_TRAIL_FRAMES];
+    // alpha multiplier by frame age, what the MULTIPLY pass leaves after age + 1 fades
+    private final float[] mTrailAlpha = new float[MAX_TRAIL_FRAMES];
+    private int mTrailLength;
+    private int mTrailHead;
+    private int mTrailCount;
     private Matrix mMatrix;
     private int mWidth;
     private int mHeight;
+    private final BandGradient mGradient = new BandGradient();
+    private int mGradientMode;
 
-    private ColorAnimator mLavaLamp;
     private LegacySettingsObserver mObserver;
-    private boolean mPulseAccentColorEnabled;
-    private boolean mLavaLampEnabled;
-    private boolean mIsValidStream;
-    private boolean mSmoothingEnabled;
-
-    private PulseController mController;
+    private RendererColors mColors;
 
     public FadingBlockRenderer(Context context, Handler handler, PulseObserver callback,
             PulseController controller) {
         super(context, handler, callback);
-        mController = controller;
         mObserver = new LegacySettingsObserver(handler);
-        mLavaLamp = new ColorAnimator();
-        mLavaLamp.setColorAnimatorListener(this);
         mPaint = new Paint();
+        mColors = new RendererColors(context, handler, controller, mPaint,
+                mContext.getResources().getColor(R.color.config_pulseFillColor),
+                Settings.Secure.FLING_PULSE_LAVALAMP_SPEED, this);
+        mColors.updateSettings();
         mFadePaint = new Paint();
         mFadePaint.setXfermode(new PorterDuffXfermode(Mode.MULTIPLY));
         mMatrix = new Matrix();
@@ -95,65 +103,26 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
 
     @Override
     public void onStreamAnalyzed(boolean isValid) {
-        mIsValidStream = isValid;
         if (isValid) {
             onSizeChanged(0, 0, 0, 0);
-            if (mLavaLampEnabled  && !mPulseAccentColorEnabled) {
-                mLavaLamp.start();
-            }
         }
+        mColors.onStreamAnalyzed(isValid);
     }
 
     @Override
-    public void onFFTUpdate(byte[] bytes) {
-        mFFTBytes = bytes;
-        if (mFFTBytes != null) {
-            if (mFFTPoints == null || mFFTPoints.length < mFFTBytes.length * 4) {
-                mFFTPoints = new float[mFFTBytes.length * 4];
-            }
-            int divisionLength = mFFTBytes.length / mDivisions;
-            if (mSmoothingEnabled) {
-                if (mFFTAverage == null || mFFTAverage.length != divisionLength) {
-                    setupFFTAverage(divisionLength);
-                }
-            } else {
-                mFFTAverage = null;
-            }
-            for (int i = 0; i < divisionLength; i++) {
-                if (mVertical) {
-                    mFFTPoints[i * 4 + 1] = i * 4 * mDivisions;
-                    mFFTPoints[i * 4 + 3] = i * 4 * mDivisions;
-                } else {
-                    mFFTPoints[i * 4] = i * 4 * mDivisions;
-                    mFFTPoints[i * 4 + 2] = i * 4 * mDivisions;
-                }
-                rfk = mFFTBytes[mDivisions * i];
-                ifk = mFFTBytes[mDivisions * i + 1];
-                magnitude = (rfk * rfk + ifk * ifk);
-                dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
-                if (mSmoothingEnabled) {
-                    dbValue = mFFTAverage[i].average(dbValue);
-                }
-                if (mVertical) {
-                    mFFTPoints[i * 4] = mLeftInLandscape ? 0 : mWidth;
-                    mFFTPoints[i * 4 + 2] = mLeftInLandscape ? (dbValue * mDbFuzzFactor + mDbFuzz)
-                            : (mWidth - (dbValue * mDbFuzzFactor + mDbFuzz));
-                } else {
-                    mFFTPoints[i * 4 + 1] = mHeight;
-                    mFFTPoints[i * 4 + 3] = mHeight - (dbValue * mDbFuzzFactor + mDbFuzz);
-                }
-            }
-        }
-        mCanvas.drawLines(mFFTPoints, mPaint);
-        mCanvas.drawPaint(mFadePaint);
-        postInvalidate();
+    protected int getBandCount(int bins) {
+        return mGeometry.getBandCount(bins);
     }
 
-    private void setupFFTAverage(int size) {
-        mFFTAverage = new FFTAverage[size];
-        for (int i = 0; i < size; i++) {
-            mFFTAverage[i] = new FFTAverage();
+    @Override
+    protected void onBandsUpdate(float[] bands, int count) {
+        TripleBuffer buffer = mPointsBuffer;
+        if (buffer == null || buffer.size() != count * 4) {
+            buffer = new TripleBuffer(count * 4);
+            mPointsBuffer = buffer;
         }
+        mGeometry.setPoints(bands, count, buffer.getWriteBuffer());
+        buffer.publish();
     }
 
     @Override
@@ -161,24 +130,53 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
         if (mCallback.getWidth() > 0 && mCallback.getHeight() > 0) {
             mWidth = mCallback.getWidth();
             mHeight = mCallback.getHeight();
-            mVertical = mHeight > mWidth;
-            mCanvasBitmap = Bitmap.createBitmap(mWidth, mHeight, Config.ARGB_8888);
-            mCanvas = new Canvas(mCanvasBitmap);
+            mGeometry.setSize(mWidth, mHeight, mLeftInLandscape);
+            if (mCanvasBitmap != null) {
+                acquireCanvasBitmap();
+            }
+            // recorded frames are laid out for the old size
+            resetTrail();
+            applyGradient();
         }
     }
 
-    @Override
-    public void onColorChanged(ColorAnimator colorAnimator, int color) {
-        mPaint.setColor(mPulseAccentColorEnabled ? mAccentColor : color);
+    private boolean isGradientEnabled() {
+        return mGradientMode != BandGradient.MODE_OFF && !mColors.isAccentColorEnabled();
     }
 
-    @Override
-    public void onStartAnimation(ColorAnimator colorAnimator, int firstColor) {
+    // a gradient replaces the animated color
+    private void updateGradient() {
+        mColors.setLavaLampSuppressed(isGradientEnabled());
+        // after the lava lamp stops, which puts the plain color back
+        applyGradient();
+    }
+
+    private void applyGradient() {
+        if (isGradientEnabled()) {
+            // the shader supplies the color, the paint only its alpha
+            mPaint.setColor(Color.WHITE);
+            mPaint.setShader(mGradient.get(mGradientMode, mWidth, mHeight, mGeometry.isVertical(),
+                    mLeftInLandscape, mColors.getLavaLampColorFrom(),
+                    mColors.getLavaLampColorTo()));
+        } else {
+            mPaint.setShader(null);
+        }
+    }
+
+    private void acquireCanvasBitmap() {
+        mCanvasBitmap = mBitmapPool.acquire(mWidth, mHeight);
+        mCanvas.setBitmap(mCanvasBitmap);
+    }
+
+    private void releaseCanvasBitmap() {
+        mCanvas.setBitmap(null);
+        mCanvasBitmap = null;
+        mBitmapPool.release();
     }
 
     @Override
-    public void onStopAnimation(ColorAnimator colorAnimator, int lastColor) {
-        mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : (mPulseAccentColorEnabled ? mAccentColor : mUserColor));
+    public void onColorSettingsChanged() {
+        updateGradient();
     }
 
     @Override
@@ -189,22 +187,125 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
         }
     }
 
+    @Override
+    public void onDeactivated() {
+        super.onDeactivated();
+        mColors.onDeactivated();
+    }
+
     @Override
     public void destroy() {
+        super.destroy();
         mContext.getContentResolver().unregisterContentObserver(mObserver);
-        mLavaLamp.stop();
-        mCanvasBitmap = null;
+        mColors.destroy();
+        releaseCanvasBitmap();
+        resetTrail();
+        mTrailNode = null;
     }
 
     @Override
     public void onVisualizerLinkChanged(boolean linked) {
         if (!linked) {
-            mLavaLamp.stop();
+            mColors.stopLavaLamp();
+            releaseCanvasBitmap();
+            resetTrail();
         }
     }
 
     @Override
     public void draw(Canvas canvas) {
+        if (!mFadeEnabled) {
+            // no trail, the latest lines go straight to the view
+            final TripleBuffer buffer = mPointsBuffer;
+            if (buffer != null) {
+                buffer.update();
+                canvas.drawLines(buffer.getReadBuffer(), mPaint);
+            }
+            return;
+        }
+        if (canvas instanceof DisplayListCanvas) {
+            drawHardware((DisplayListCanvas) canvas);
+        } else {
+            drawSoftware(canvas);
+        }
+    }
+
+    private void drawHardware(DisplayListCanvas canvas) {
+        if (mWidth <= 0 || mHeight <= 0) {
+            return;
+        }
+        if (mTrailNode == null) {
+            mTrailNode = RenderNode.create("PulseFadeTrail", null);
+        }
+        // re-record once per processed frame, otherwise replay the last one
+        final TripleBuffer buffer = mPointsBuffer;
+        if (buffer != null && buffer.update()) {
+            pushTrailFrame(buffer.getReadBuffer());
+            recordTrail();
+        }
+        if (mTrailNode.isValid()) {
+            canvas.drawRenderNode(mTrailNode);
+        }
+    }
+
+    private void pushTrailFrame(float[] points) {
+        mTrailHead = (mTrailHead + 1) % MAX_TRAIL_FRAMES;
+        if (mTrail[mTrailHead] == null || mTrail[mTrailHead].length != points.length) {
+            mTrail[mTrailHead] = new float[points.length];
+        }
+        System.arraycopy(points, 0, mTrail[mTrailHead], 0, points.length);
+        mTrailColors[mTrailHead] = mPaint.getColor();
+        mTrailCount = Math.min(mTrailCount + 1, MAX_TRAIL_FRAMES);
+    }
+
+    private void recordTrail() {
+        mTrailPaint.set(mPaint);
+        final DisplayListCanvas canvas = mTrailNode.start(mWidth, mHeight);
+        try {
+            // oldest first so newer lines land on top, like the bitmap trail
+            for (int age = Math.min(mTrailCount, mTrailLength) - 1; age >= 0; age--) {
+                final int slot = (mTrailHead - age + MAX_TRAIL_FRAMES) % MAX_TRAIL_FRAMES;
+                final int color = mTrailColors[slot];
+                mTrailPaint.setColor(color);
+                mTrailPaint.setAlpha((int) (Color.alpha(color) * mTrailAlpha[age]));
+                canvas.drawLines(mTrail[slot], mTrailPaint);
+            }
+        } finally {
+            mTrailNode.end(canvas);
+        }
+        mTrailNode.setLeftTopRightBottom(0, 0, mWidth, mHeight);
+    }
+
+    private void resetTrail() {
+        mTrailCount = 0;
+        if (mTrailNode != null) {
+            mTrailNode.discardDisplayList();
+        }
+    }
+
+    private void updateTrailAlpha(int fadeOpacity) {
+        final float decay = fadeOpacity / 255f;
+        float alpha = decay;
+        mTrailLength = 0;
+        while (mTrailLength < MAX_TRAIL_FRAMES && alpha * 255f >= 1f) {
+            mTrailAlpha[mTrailLength++] = alpha;
+            alpha *= decay;
+        }
+    }
+
+    private void drawSoftware(Canvas canvas) {
+        if (mCanvasBitmap == null) {
+            if (mWidth <= 0 || mHeight <= 0) {
+                return;
+            }
+            acquireCanvasBitmap();
+        }
+        // fade once per processed frame, not once per draw
+        final TripleBuffer buffer = mPointsBuffer;
+        if (buffer != null && buffer.update()) {
+            mCanvas.drawLines(buffer.getReadBuffer(), mPaint);
+            mCanvas.drawPaint(mFadePaint);
+        }
         canvas.drawBitmap(mCanvasBitmap, mMatrix, null);
     }
 
@@ -222,27 +323,6 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
 
         void register() {
             ContentResolver resolver = mContext.getContentResolver();
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_ACCENT_COLOR_ENABLED), false,
-                    this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_COLOR), false, this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED), false,
-                    this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_SPEED), false,
-                    this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM), false, this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO), false, this,
-                    UserHandle.USER_ALL);
             resolver.registerContentObserver(
                     Settings.Secure.getUriFor(Settings.Secure.PULSE_CUSTOM_DIMEN), false, this,
                     UserHandle.USER_ALL);
@@ -260,10 +340,6 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
                     Settings.Secure.getUriFor(Settings.Secure.PULSE_CUSTOM_FUDGE_FACTOR), false,
                     this,
                     UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_AUTO_COLOR), false,
-                    this,
-                    UserHandle.USER_ALL);
             resolver.registerContentObserver(
                     Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED), false,
                     this,
@@ -271,6 +347,18 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
             resolver.registerContentObserver(
                     Settings.Secure.getUriFor(Settings.Secure.PULSE_FADING_BLOCKS_OPACITY), false, this,
                     UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(PulseController.PULSE_SMOOTHING_MODE), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(PulseController.PULSE_SMOOTHING_WINDOW), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(PulseController.PULSE_BAND_MAPPING), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(PulseController.PULSE_GRADIENT_MODE), false, this,
+                    UserHandle.USER_ALL);
         }
 
         @Override
@@ -282,52 +370,25 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
             ContentResolver resolver = mContext.getContentResolver();
             final Resources res = mContext.getResources();
 
-            mAutoColor = Settings.Secure.getIntForUser(
-                    resolver, Settings.Secure.PULSE_AUTO_COLOR, 0,
-                    UserHandle.USER_CURRENT) == 1;
-
-            mPulseAccentColorEnabled = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.PULSE_ACCENT_COLOR_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
-
-            mLavaLampEnabled = !mAutoColor && Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED, 1, UserHandle.USER_CURRENT) == 1;
-
-            mUserColor = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_COLOR,
-                    mContext.getResources().getColor(R.color.config_pulseFillColor),
-                    UserHandle.USER_CURRENT);
-            mAccentColor = mContext.getResources().getColor(R.color.pulseAccentColor);
-
-            if (mPulseAccentColorEnabled) {
-                mPaint.setColor(mAccentColor);
-            }
-
-            if (!mLavaLampEnabled && !mPulseAccentColorEnabled) {
-                int lastColor = mController.getAlbumArtColor();
-                mPaint.setColor(mAutoColor && lastColor != -1 ? lastColor : mUserColor);
-            }
-            int time = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_SPEED, 10000,
-                    UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationTime(time);
-            int lavaLampColorFrom= Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM,
-                    0xffff8080,
-                    UserHandle.USER_CURRENT);
-            int lavaLampColorTo = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO,
-                    0xff8080ff,
-                    UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationColors(lavaLampColorFrom, lavaLampColorTo);
-
-            mSmoothingEnabled = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
-
-            if (mLavaLampEnabled && mIsValidStream && !mPulseAccentColorEnabled) {
-                mLavaLamp.start();
-            } else {
-                mLavaLamp.stop();
-            }
+            mGradientMode = BandGradient.validateMode(Settings.Secure.getIntForUser(resolver,
+                    PulseController.PULSE_GRADIENT_MODE, BandGradient.MODE_OFF,
+                    UserHandle.USER_CURRENT));
+
+            setSmoothing(Settings.Secure.getIntForUser(resolver,
+                    Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED, 0, UserHandle.USER_CURRENT) == 1,
+                    Settings.Secure.getIntForUser(resolver,
+                            PulseController.PULSE_SMOOTHING_MODE,
+                            FFTSmoother.MODE_MOVING_AVERAGE, UserHandle.USER_CURRENT),
+                    Settings.Secure.getIntForUser(resolver,
+                            PulseController.PULSE_SMOOTHING_WINDOW,
+                            FFTSmoother.DEFAULT_WINDOW_LENGTH, UserHandle.USER_CURRENT));
+
+            // linear keeps the original layout: bands spread evenly over the capture
+            setBandMapping(Settings.Secure.getIntForUser(resolver,
+                    PulseController.PULSE_BAND_MAPPING, BandMapper.TYPE_LINEAR,
+                    UserHandle.USER_CURRENT), 0, 0);
+
+            updateGradient();
             int emptyBlock = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_EMPTY_BLOCK_SIZE, 1,
                     UserHandle.USER_CURRENT);
@@ -352,42 +413,40 @@ public class FadingBlockRenderer extends Renderer implements ColorAnimator.Color
                     mPathEffect2
             }, 0));
             mPaint.setStrokeWidth(getLimitedDimenValue(customDimen, 1, 30, res));
-            mDivisions = validateDivision(numDivision);
+            mUserDivisions = FadingBlockGeometry.validateDivision(numDivision);
+            applyDivisions();
             mDbFuzzFactor = Math.max(2, Math.min(6, fudgeFactor));
+            setDbScale(mDbFuzzFactor, mDbFuzz);
 
             int fadingBlocksColor = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_FADING_BLOCKS_OPACITY, 150,
                     UserHandle.USER_CURRENT);
             mFadePaint.setColor(Color.argb(fadingBlocksColor, 255, 255, 255));
+            updateTrailAlpha(fadingBlocksColor);
         }
     }
 
+    @Override
+    protected void onQualityChanged() {
+        if (!mFadeEnabled) {
+            releaseCanvasBitmap();
+            resetTrail();
+        }
+        applyDivisions();
+    }
+
+    private void applyDivisions() {
+        mGeometry.setDivisions(FadingBlockGeometry.getDivisions(mUserDivisions, mMinUnits,
+                mUnitDivisor, VisualizerStreamHandler.getMaxCaptureBins() * 2));
+    }
+
     private static int getLimitedDimenValue(int val, int min, int max, Resources res) {
         return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
                 Math.max(min, Math.min(max, val)), res.getDisplayMetrics());
     }
 
-    private static int validateDivision(int val) {
-        // if a bad value was passed from settings (not divisible by 2)
-        // reset to default value of 16. Validate range.
-        if (val % 2 != 0) {
-            val = 16;
-        }
-        return Math.max(2, Math.min(44, val));
-    }
-
+    @Override
     public void setColors(boolean colorizedMedia, int[] colors) {
-        if (colorizedMedia) {
-            // be sure the color will always have an acceptable contrast against black navbar
-            mAlbumColor = NotificationColorUtil.findContrastColorAgainstDark(colors[0], 0x000000, true, 2);
-            // now be sure the color will always have an acceptable contrast against white navbar
-            mAlbumColor = NotificationColorUtil.findContrastColor(mAlbumColor, 0xffffff, true, 2);
-        } else {
-            mAlbumColor = -1;
-        }
-        if (mAutoColor && !mLavaLampEnabled) {
-            mPaint.setColor(mAlbumColor != -1 ? mAlbumColor : mUserColor);
-            mController.setLastColor(mAlbumColor);
-        }
+        mColors.setColors(colorizedMedia, colors);
     }
 }
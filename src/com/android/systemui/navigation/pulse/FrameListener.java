@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Receiver of raw capture frames, whether they come from a live Visualizer
+ * or a FramePlayer. Kept free of Android types so recordings can be fed
+ * through the pipeline on a desktop JVM
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+public interface FrameListener {
+    public void onFFTUpdate(byte[] bytes);
+
+    public void onWaveFormUpdate(byte[] bytes);
+}
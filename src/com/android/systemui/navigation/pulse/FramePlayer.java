@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Feed a FrameRecorder capture back to a FrameListener, at the recorded
+ * pace, sped up, or as fast as the listener takes them
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FramePlayer implements Closeable {
+    // don't wait between frames at all
+    public static final float SPEED_UNPACED = 0f;
+
+    private final DataInputStream mIn;
+    // reused while the capture size stays the same
+    private byte[] mFft = new byte[0];
+    private byte[] mWaveform = new byte[0];
+    private volatile boolean mStopped;
+
+    public FramePlayer(InputStream in) throws IOException {
+        mIn = new DataInputStream(new BufferedInputStream(in));
+        if (mIn.readInt() != FrameRecorder.MAGIC) {
+            throw new IOException("not a Pulse frame recording");
+        }
+        final int version = mIn.readUnsignedShort();
+        if (version != FrameRecorder.VERSION) {
+            throw new IOException("unsupported recording version " + version);
+        }
+    }
+
+    /**
+     * Play the rest of the recording on the calling thread
+     *
+     * @param speed - 1 for the recorded pace, 2 for twice as fast, SPEED_UNPACED
+     *        for no waiting
+     * @return number of frames delivered
+     */
+    public int play(FrameListener listener, float speed) throws IOException {
+        int frames = 0;
+        long deadline = System.nanoTime();
+        while (!mStopped) {
+            final int type;
+            try {
+                type = mIn.readUnsignedByte();
+            } catch (EOFException e) {
+                break;
+            }
+            final long deltaMicros = mIn.readInt() & 0xffffffffL;
+            final int length = mIn.readUnsignedShort();
+            final byte[] bytes;
+            if (type == FrameRecorder.TYPE_WAVEFORM) {
+                if (mWaveform.length != length) {
+                    mWaveform = new byte[length];
+                }
+                bytes = mWaveform;
+            } else {
+                if (mFft.length != length) {
+                    mFft = new byte[length];
+                }
+                bytes = mFft;
+            }
+            mIn.readFully(bytes);
+
+            if (speed > 0f) {
+                deadline += (long) (deltaMicros * 1000 / speed);
+                waitUntil(deadline);
+            }
+            if (type == FrameRecorder.TYPE_WAVEFORM) {
+                listener.onWaveFormUpdate(bytes);
+            } else if (type == FrameRecorder.TYPE_FFT) {
+                listener.onFFTUpdate(bytes);
+            }
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Make a play() running on another thread return after its current frame
+     */
+    public void stop() {
+        mStopped = true;
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (!mStopped && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mStopped = true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Write capture frames to a stream for FramePlayer. Format, big endian:
+ *
+ *   header: int MAGIC, short VERSION
+ *   frame:  byte type, int micros since the previous frame, short length,
+ *           length bytes of capture
+ *
+ * Meant for debugging, frames are written on the calling (capture) thread
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class FrameRecorder implements FrameListener, Closeable {
+    static final int MAGIC = 0x50554c53; // "PULS"
+    static final int VERSION = 1;
+    static final int TYPE_FFT = 1;
+    static final int TYPE_WAVEFORM = 2;
+
+    private final DataOutputStream mOut;
+    private long mLastFrameNanos;
+    private int mFrames;
+    private IOException mError;
+
+    public FrameRecorder(OutputStream out) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(out));
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+    }
+
+    @Override
+    public void onFFTUpdate(byte[] bytes) {
+        write(TYPE_FFT, bytes);
+    }
+
+    @Override
+    public void onWaveFormUpdate(byte[] bytes) {
+        write(TYPE_WAVEFORM, bytes);
+    }
+
+    private synchronized void write(int type, byte[] bytes) {
+        if (mError != null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long delta = mLastFrameNanos == 0 ? 0 : (now - mLastFrameNanos) / 1000;
+        mLastFrameNanos = now;
+        try {
+            mOut.writeByte(type);
+            mOut.writeInt((int) Math.min(Integer.MAX_VALUE, delta));
+            mOut.writeShort(bytes.length);
+            mOut.write(bytes);
+            mFrames++;
+        } catch (IOException e) {
+            // stop recording, the frames written so far stay readable
+            mError = e;
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @return the write failure that stopped recording, or null
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mOut.close();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Vsync aligned frame pacing for renderers. Any number of frame requests
+ * between two vsyncs collapse into a single frame, and an optional target
+ * rate skips vsyncs so the average rate lands on the target
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class FrameScheduler implements Choreographer.FrameCallback {
+    public interface Callback {
+        // called on the thread the scheduler was created on
+        public void onFrame(long frameTimeNanos);
+    }
+
+    // draw on every vsync the display produces
+    static final int FPS_MATCH_DISPLAY = 0;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Choreographer mChoreographer;
+    private final Callback mCallback;
+    private final AtomicBoolean mFramePosted = new AtomicBoolean();
+    private volatile PulseStats mStats;
+    private int mTargetFps = FPS_MATCH_DISPLAY;
+    private long mFrameIntervalNanos;
+    private long mLastFrameNanos;
+
+    FrameScheduler(Callback callback) {
+        mChoreographer = Choreographer.getInstance();
+        mCallback = callback;
+    }
+
+    /**
+     * @param fps - target frames per second, FPS_MATCH_DISPLAY to follow the panel
+     */
+    void setTargetFps(int fps) {
+        mTargetFps = Math.max(FPS_MATCH_DISPLAY, fps);
+        mFrameIntervalNanos = mTargetFps == FPS_MATCH_DISPLAY ? 0 : NANOS_PER_SECOND / mTargetFps;
+    }
+
+    void setStats(PulseStats stats) {
+        mStats = stats;
+    }
+
+    int getTargetFps() {
+        return mTargetFps;
+    }
+
+    /**
+     * Ask for a frame on the next vsync. Safe to call from any thread
+     */
+    void requestFrame() {
+        if (mFramePosted.compareAndSet(false, true)) {
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    void cancel() {
+        mChoreographer.removeFrameCallback(this);
+        mFramePosted.set(false);
+        mLastFrameNanos = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted.set(false);
+        if (mFrameIntervalNanos > 0 && mLastFrameNanos != 0) {
+            // allow half a vsync of jitter so a target equal to the panel rate
+            // never skips frames
+            final long elapsed = frameTimeNanos - mLastFrameNanos;
+            final long slack = mChoreographer.getFrameIntervalNanos() / 2;
+            if (elapsed < mFrameIntervalNanos - slack) {
+                // too early, updates keep coalescing until a later vsync
+                final PulseStats stats = mStats;
+                if (stats != null) {
+                    stats.mFramesThrottled.incrementAndGet();
+                }
+                requestFrame();
+                return;
+            }
+            // keep the average on target instead of drifting to a vsync divisor
+            mLastFrameNanos = elapsed < mFrameIntervalNanos * 2
+                    ? mLastFrameNanos + mFrameIntervalNanos : frameTimeNanos;
+        } else {
+            mLastFrameNanos = frameTimeNanos;
+        }
+        mCallback.onFrame(frameTimeNanos);
+    }
+}
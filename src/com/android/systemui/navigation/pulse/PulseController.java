@@ -34,24 +34,29 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.media.AudioManager;
-import android.media.IAudioService;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.IBinder;
 import android.os.PowerManager;
-import android.os.RemoteException;
-import android.os.ServiceManager;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.animation.Animation;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
 public class PulseController {
     public interface PulseObserver {
         public int getWidth();
         public int getHeight();
         public void postInvalidate();
+        public void invalidate();
 
         // return false to immediately begin Pulse
         // return true to do pre-processing. Implementation MUST
@@ -60,30 +65,177 @@ public class PulseController {
         public void onStopPulse(Animation animatePulseOut);
     }
 
+    /**
+     * Lets other navbar effects follow the music without their own audio
+     * processing
+     */
+    public interface BeatListener {
+        /**
+         * Main thread, on each detected onset
+         *
+         * @param strength - how far the onset rose over its threshold, 1 and up
+         * @param bpm - tempo estimate, 0 until there is one
+         */
+        public void onBeat(float strength, float bpm);
+    }
+
     private static final String TAG = PulseController.class.getSimpleName();
     private static final int RENDER_STYLE_LEGACY = 0;
     private static final int RENDER_STYLE_CM = 1;
+    private static final int RENDER_STYLE_WAVEFORM = 2;
+
+    public static final String PULSE_SMOOTHING_MODE = "pulse_smoothing_mode";
+    public static final String PULSE_SMOOTHING_WINDOW = "pulse_smoothing_window";
+    public static final String PULSE_RENDER_FPS = "pulse_render_fps";
+    public static final String PULSE_BAND_MAPPING = "pulse_band_mapping";
+    // SolidLineGeometry BAR_STYLE_*, how the bars are faded and capped. Other
+    // than fade, styles draw as one mesh on a software canvas
+    public static final String PULSE_SOLID_BAR_STYLE = "pulse_solid_bar_style";
+    // BandGradient mode, shades bars with the lava lamp colors
+    public static final String PULSE_GRADIENT_MODE = "pulse_gradient_mode";
+    // floats, per frame milliseconds for draw and for processing, 0 doesn't check that one
+    public static final String PULSE_FRAME_BUDGET = "pulse_frame_budget";
+    public static final String PULSE_PROCESS_BUDGET = "pulse_process_budget";
+    // lower bounds for what the governor may take away
+    public static final String PULSE_MIN_UNITS = "pulse_min_units";
+    public static final String PULSE_MIN_FPS = "pulse_min_fps";
+    // what Pulse does while battery saver is on, one of BATTERY_SAVER_*
+    public static final String PULSE_BATTERY_SAVER_MODE = "pulse_battery_saver_mode";
+
+    public static final int BATTERY_SAVER_OFF = 0;
+    public static final int BATTERY_SAVER_LOW_POWER = 1;
+    public static final int BATTERY_SAVER_FULL = 2;
+
+    // Visualizer session 0 captures the global output mix
+    public static final int AUDIO_SESSION_GLOBAL = 0;
+
+    // link states, see doLinkage()
+    private static final int LINK_IDLE = 0;
+    private static final int LINK_ACTIVE = 1;
+    // Visualizer kept but disabled, so a quick resume skips creating it again
+    private static final int LINK_WARM = 2;
+
+    // how long the bar may stay hidden before capture is suspended
+    private static final long SUSPEND_GRACE_MILLIS = 5000;
+    // how long a suspended Visualizer is kept before it is released
+    private static final long WARM_MILLIS = 10000;
+    // a stop in playback has to last this long before we act on it, track skips don't
+    private static final long MEDIA_STOP_DEBOUNCE_MILLIS = 750;
+    // a stream validated this recently is trusted when capture resumes
+    private static final long VALIDATION_REUSE_MILLIS = 30000;
+    // the governor is opt in
+    private static final float DEFAULT_FRAME_BUDGET_MS = 0f;
+    private static final float DEFAULT_PROCESS_BUDGET_MS = 0f;
+    private static final int DEFAULT_MIN_UNITS = 16;
+    private static final int DEFAULT_MIN_FPS = 30;
+    // low power tier: a quarter of the units at most this many fps
+    private static final int LOW_POWER_UNIT_DIVISOR = 4;
+    private static final int LOW_POWER_FPS = 15;
+    // dumpsys --pulse-record target, under the SystemUI cache dir
+    private static final String RECORDING_FILE_NAME = "pulse_frames.rec";
 
     private Context mContext;
     private Handler mHandler;
     private AudioManager mAudioManager;
     private Renderer mRenderer;
+    private RendererRegistry mRendererRegistry;
     private VisualizerStreamHandler mStreamHandler;
+    private VisualizerLock mVisualizerLock;
+    private PulseProcessor mProcessor;
+    private BeatDetector mBeatDetector;
+    // main thread only
+    private final ArrayList<BeatListener> mBeatListeners = new ArrayList<>();
+    // latest beat, written on the processing thread before mBeatRunnable is posted
+    private volatile float mBeatStrength;
+    private volatile float mBeatBpm;
+    private final PulseStats mStats = new PulseStats();
+    // debug capture of the live stream, see dump()
+    private volatile FrameRecorder mRecorder;
     private PulseObserver mPulseObserver;
     private SettingsObserver mSettingsObserver;
     private Bitmap mAlbumArt;
     private int mAlbumArtColor = -1;
     private boolean mPulseEnabled;
     private boolean mKeyguardShowing;
-    private boolean mLinked;
+    private int mLinkState = LINK_IDLE;
+    // session of the active player, AUDIO_SESSION_GLOBAL if none is known
+    private int mAudioSessionId = AUDIO_SESSION_GLOBAL;
+    // session the current link captures, only the global mix holds the visualizer lock
+    private int mLinkedSessionId = AUDIO_SESSION_GLOBAL;
+    // a player session that gave us no valid stream, the global mix is used instead
+    private int mFailedSessionId = AUDIO_SESSION_GLOBAL;
     private boolean mPowerSaveModeEnabled;
+    private int mBatterySaverMode;
     private boolean mScreenOn;
     private boolean mMusicStreamMuted;
     private boolean mLeftInLandscape;
     private boolean mScreenPinningEnabled;
     private int mPulseStyle;
+    private int mTargetFps;
+    private final PulseGovernor mGovernor = new PulseGovernor();
+    private int mMinUnits;
+    private int mMinFps;
     private boolean mIsMediaPlaying;
 
+    // bar visibility, Pulse pauses while nobody can see it
+    private boolean mBarVisible = true;
+    private boolean mPanelExpanded;
+    private boolean mBarTransparent;
+    private boolean mOccluded;
+    // last time capture stopped on a validated stream, 0 if it wasn't
+    private long mValidStreamTime;
+
+    private final Runnable mSuspendRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mOccluded) {
+                doSuspendVisualizer();
+            }
+        }
+    };
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mLinkState == LINK_WARM) {
+                doUnlinkVisualizer();
+            }
+        }
+    };
+
+    private final Runnable mBeatRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final float strength = mBeatStrength;
+            final float bpm = mBeatBpm;
+            // backwards, a listener may remove itself
+            for (int i = mBeatListeners.size() - 1; i >= 0; i--) {
+                mBeatListeners.get(i).onBeat(strength, bpm);
+            }
+        }
+    };
+
+    private final BeatDetector.Callback mBeatCallback = new BeatDetector.Callback() {
+        @Override
+        public void onBeat(float strength, float bpm) {
+            mBeatStrength = strength;
+            mBeatBpm = bpm;
+            // a beat the main thread hasn't delivered yet is replaced, not queued
+            mHandler.removeCallbacks(mBeatRunnable);
+            mHandler.post(mBeatRunnable);
+        }
+    };
+
+    private final Runnable mMediaStoppedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsMediaPlaying = false;
+            // the next stream may well work on the session this one failed on
+            mFailedSessionId = AUDIO_SESSION_GLOBAL;
+            doLinkage();
+        }
+    };
+
     public void onReceive(Intent intent) {
         if (PowerManager.ACTION_POWER_SAVE_MODE_CHANGING.equals(intent.getAction())) {
             mPowerSaveModeEnabled = intent.getBooleanExtra(PowerManager.EXTRA_POWER_SAVE_MODE,
@@ -91,6 +243,7 @@ public class PulseController {
             mHandler.post(new Runnable() {
                 @Override
                 public void run() {
+                    applyQuality();
                     doLinkage();
                 }
             });
@@ -122,6 +275,12 @@ public class PulseController {
                 if (!mPulseObserver.onStartPulse(null)) {
                     turnOnPulse();
                 }
+            } else if (mLinkedSessionId != AUDIO_SESSION_GLOBAL) {
+                // the player's own session gave us nothing, try the output mix
+                mFailedSessionId = mLinkedSessionId;
+                if (mLinkState == LINK_ACTIVE && isAbleToLink()) {
+                    doLinkVisualizer();
+                }
             } else {
                 doSilentUnlinkVisualizer();
             }
@@ -129,16 +288,20 @@ public class PulseController {
 
         @Override
         public void onFFTUpdate(byte[] bytes) {
-            if (mRenderer != null) {
-                mRenderer.onFFTUpdate(bytes);
+            final FrameRecorder recorder = mRecorder;
+            if (recorder != null) {
+                recorder.onFFTUpdate(bytes);
             }
+            mProcessor.onFFTUpdate(bytes);
         }
 
         @Override
         public void onWaveFormUpdate(byte[] bytes) {
-            if (mRenderer != null) {
-                mRenderer.onWaveFormUpdate(bytes);
+            final FrameRecorder recorder = mRecorder;
+            if (recorder != null) {
+                recorder.onWaveFormUpdate(bytes);
             }
+            mProcessor.onWaveFormUpdate(bytes);
         }
     };
 
@@ -154,6 +317,24 @@ public class PulseController {
             mContext.getContentResolver().registerContentObserver(
                     Settings.Secure.getUriFor(Settings.Secure.PULSE_RENDER_STYLE_URI), false, this,
                     UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_RENDER_FPS), false, this,
+                    UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_FRAME_BUDGET), false, this,
+                    UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_PROCESS_BUDGET), false, this,
+                    UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_MIN_UNITS), false, this,
+                    UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_MIN_FPS), false, this,
+                    UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.Secure.getUriFor(PULSE_BATTERY_SAVER_MODE), false, this,
+                    UserHandle.USER_ALL);
         }
 
         @Override
@@ -166,12 +347,30 @@ public class PulseController {
                 if (mPulseObserver != null) {
                     loadRenderer();
                 }
+            } else if (uri.equals(Settings.Secure.getUriFor(PULSE_RENDER_FPS))) {
+                updateTargetFps();
+                applyQuality();
+            } else if (uri.equals(Settings.Secure.getUriFor(PULSE_BATTERY_SAVER_MODE))) {
+                updateBatterySaverMode();
+                applyQuality();
+                doLinkage();
+            } else {
+                updateGovernor();
+                applyQuality();
             }
         }
 
         void updateSettings() {
             updateEnabled();
             updateRenderMode();
+            updateTargetFps();
+            updateGovernor();
+            updateBatterySaverMode();
+        }
+
+        void updateBatterySaverMode() {
+            mBatterySaverMode = Settings.Secure.getIntForUser(mContext.getContentResolver(),
+                    PULSE_BATTERY_SAVER_MODE, BATTERY_SAVER_OFF, UserHandle.USER_CURRENT);
         }
 
         void updateEnabled() {
@@ -183,6 +382,24 @@ public class PulseController {
             mPulseStyle = Settings.Secure.getIntForUser(mContext.getContentResolver(),
                     Settings.Secure.PULSE_RENDER_STYLE_URI, RENDER_STYLE_CM, UserHandle.USER_CURRENT);
         }
+
+        void updateTargetFps() {
+            // 0 follows the panel refresh rate (60/90/120Hz)
+            mTargetFps = Settings.Secure.getIntForUser(mContext.getContentResolver(),
+                    PULSE_RENDER_FPS, FrameScheduler.FPS_MATCH_DISPLAY, UserHandle.USER_CURRENT);
+        }
+
+        void updateGovernor() {
+            final ContentResolver resolver = mContext.getContentResolver();
+            mGovernor.setBudget(Settings.Secure.getFloatForUser(resolver,
+                    PULSE_FRAME_BUDGET, DEFAULT_FRAME_BUDGET_MS, UserHandle.USER_CURRENT),
+                    Settings.Secure.getFloatForUser(resolver,
+                    PULSE_PROCESS_BUDGET, DEFAULT_PROCESS_BUDGET_MS, UserHandle.USER_CURRENT));
+            mMinUnits = Settings.Secure.getIntForUser(resolver,
+                    PULSE_MIN_UNITS, DEFAULT_MIN_UNITS, UserHandle.USER_CURRENT);
+            mMinFps = Settings.Secure.getIntForUser(resolver,
+                    PULSE_MIN_FPS, DEFAULT_MIN_FPS, UserHandle.USER_CURRENT);
+        }
     };
 
     public PulseController(Context context, Handler handler) {
@@ -197,7 +414,15 @@ public class PulseController {
         mPowerSaveModeEnabled = pm.isPowerSaveMode();
 
         mSettingsObserver.register();
+        mProcessor = new PulseProcessor(mStats);
+        mBeatDetector = new BeatDetector(mBeatCallback);
+        mRendererRegistry = new RendererRegistry(context, handler, this);
+        // first registered style is the fallback for unknown values
+        mRendererRegistry.register(RENDER_STYLE_LEGACY, FadingBlockRenderer::new);
+        mRendererRegistry.register(RENDER_STYLE_CM, SolidLineRenderer::new);
+        mRendererRegistry.register(RENDER_STYLE_WAVEFORM, WaveformRenderer::new);
         mStreamHandler = new VisualizerStreamHandler(mContext, this, mStreamListener);
+        mVisualizerLock = new VisualizerLock(handler);
     }
 
     public void setPulseObserver(PulseObserver observer) {
@@ -212,22 +437,96 @@ public class PulseController {
         if (mPulseObserver == null) {
             return;
         }
+        final Renderer renderer = mRendererRegistry.obtain(mPulseStyle, mPulseObserver);
+        if (renderer == mRenderer) {
+            return;
+        }
         final boolean isRendering = shouldDrawPulse();
         if (isRendering) {
             mStreamHandler.pause();
         }
         if (mRenderer != null) {
-            mRenderer.destroy();
-            mRenderer = null;
+            // stays cached, or was already destroyed if the registry evicted it
+            mProcessor.setRenderer(null);
+            mRenderer.onVisualizerLinkChanged(false);
+            mRenderer.onDeactivated();
         }
-        mRenderer = getRenderer(mPulseObserver);
+        mRenderer = renderer;
+        mRenderer.setPulseStats(mStats);
         mRenderer.setLeftInLandscape(mLeftInLandscape);
+        // a warm renderer may have missed size changes while inactive
+        mRenderer.onSizeChanged(0, 0, 0, 0);
+        mProcessor.setRenderer(mRenderer);
+        mStreamHandler.setWaveformEnabled(mRenderer.needsWaveform());
+        // the budget is spent differently by each style, start over at full quality
+        mGovernor.reset();
+        applyQuality();
         if (isRendering) {
+            mRenderer.onVisualizerLinkChanged(true);
             mRenderer.onStreamAnalyzed(true);
             mStreamHandler.resume();
         }
     }
 
+    /**
+     * A renderer changed how much of each capture it uses
+     */
+    public void onCaptureRequirementsChanged(Renderer renderer) {
+        if (renderer == mRenderer) {
+            updateCaptureConfig();
+        }
+    }
+
+    private void updateCaptureConfig() {
+        if (mRenderer != null) {
+            mStreamHandler.setCaptureConfig(
+                    mRenderer.getCaptureBins(VisualizerStreamHandler.getMaxCaptureBins()),
+                    getEffectiveFps(), isLowPower());
+        }
+    }
+
+    /**
+     * Battery saver is on and the user picked the low power tier over
+     * unlinking
+     */
+    private boolean isLowPower() {
+        return mPowerSaveModeEnabled && mBatterySaverMode == BATTERY_SAVER_LOW_POWER;
+    }
+
+    private boolean isPowerSaveUnlink() {
+        return mPowerSaveModeEnabled && mBatterySaverMode == BATTERY_SAVER_OFF;
+    }
+
+    private int getEffectiveFps() {
+        final int fps = mGovernor.capFps(mTargetFps, mMinFps);
+        if (isLowPower()) {
+            // below the minimum fps on purpose, battery comes first
+            return fps == FrameScheduler.FPS_MATCH_DISPLAY ? LOW_POWER_FPS
+                    : Math.min(fps, LOW_POWER_FPS);
+        }
+        return fps;
+    }
+
+    /**
+     * Push the governor's current quality level to the renderer
+     */
+    private void applyQuality() {
+        if (mRenderer == null) {
+            return;
+        }
+        final boolean lowPower = isLowPower();
+        mStats.setLowPower(lowPower);
+        if (lowPower) {
+            mRenderer.setQuality(Math.max(LOW_POWER_UNIT_DIVISOR, mGovernor.getUnitDivisor()),
+                    mMinUnits, false, false);
+        } else {
+            mRenderer.setQuality(mGovernor.getUnitDivisor(), mMinUnits,
+                    mGovernor.isInterpolationEnabled(), mGovernor.isFadeEnabled());
+        }
+        mRenderer.setTargetFps(getEffectiveFps());
+        updateCaptureConfig();
+    }
+
     public void setScreenPinningState(boolean enabled) {
         mScreenPinningEnabled = enabled;
     }
@@ -270,46 +569,92 @@ public class PulseController {
      * @return true if bar elements should be hidden, false if not
      */
     public boolean shouldDrawPulse() {
-        return mLinked && mStreamHandler.isValidStream() && mRenderer != null;
+        return mLinkState == LINK_ACTIVE && mStreamHandler.isValidStream() && mRenderer != null;
     }
 
     public void turnOnPulse() {
-        if (isPulseEnabled() && shouldDrawPulse()) {
+        if (isPulseEnabled() && shouldDrawPulse() && !mOccluded) {
             mStreamHandler.resume(); // let bytes hit visualizer
         }
     }
 
     public void onDraw(Canvas canvas) {
         if (isPulseEnabled() && shouldDrawPulse()) {
+            final long start = System.nanoTime();
             mRenderer.draw(canvas);
+            final long end = System.nanoTime();
+            mStats.onFrameDrawn(end, end - start);
+            if (mGovernor.onFrame(end - start, mStats.getLastProcessNanos())) {
+                applyQuality();
+            }
         }
     }
 
     public void doUnlinkVisualizer() {
+        mHandler.removeCallbacks(mSuspendRunnable);
+        mHandler.removeCallbacks(mReleaseRunnable);
         if (mStreamHandler != null) {
-            if (mLinked) {
+            if (mLinkState == LINK_ACTIVE) {
+                noteStreamStopped();
                 mStreamHandler.unlink();
-                setVisualizerLocked(false);
-                mLinked = false;
-                if (mRenderer != null) {
-                    mRenderer.onVisualizerLinkChanged(false);
-                }
-                if (mPulseObserver != null) {
-                    mPulseObserver.postInvalidate();
-                    mPulseObserver.onStopPulse(null);
-                }
+                updateVisualizerLock(LINK_IDLE, mLinkedSessionId);
+                mLinkState = LINK_IDLE;
+                onLinkStopped();
+            } else if (mLinkState == LINK_WARM) {
+                // already stopped from the renderer's point of view
+                mStreamHandler.unlink();
+                updateVisualizerLock(LINK_IDLE, mLinkedSessionId);
+                mLinkState = LINK_IDLE;
             }
         }
     }
 
-    private Renderer getRenderer(PulseObserver observer) {
-        switch (mPulseStyle) {
-            case RENDER_STYLE_LEGACY:
-                return new FadingBlockRenderer(mContext, mHandler, observer, this);
-            case RENDER_STYLE_CM:
-                return new SolidLineRenderer(mContext, mHandler, observer, this);
-            default:
-                return new FadingBlockRenderer(mContext, mHandler, observer, this);
+    /**
+     * Unlink and release everything the controller holds: settings observer,
+     * cached renderers and the processing thread. Not usable afterwards
+     */
+    public void destroy() {
+        mHandler.removeCallbacks(mMediaStoppedRunnable);
+        mHandler.removeCallbacks(mBeatRunnable);
+        doUnlinkVisualizer();
+        mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
+        mProcessor.release();
+        mRenderer = null;
+        mRendererRegistry.clear();
+    }
+
+    /**
+     * Stop capturing but hold on to the Visualizer for WARM_MILLIS. Linking
+     * again within that time just enables it, without revalidating a stream
+     * that was valid
+     */
+    private void doSuspendVisualizer() {
+        mHandler.removeCallbacks(mSuspendRunnable);
+        if (mStreamHandler != null && mLinkState == LINK_ACTIVE) {
+            noteStreamStopped();
+            mStreamHandler.suspend();
+            mLinkState = LINK_WARM;
+            onLinkStopped();
+            mHandler.postDelayed(mReleaseRunnable, WARM_MILLIS);
+        }
+    }
+
+    private void noteStreamStopped() {
+        mValidStreamTime = mStreamHandler.isValidStream() ? SystemClock.elapsedRealtime() : 0;
+    }
+
+    private boolean isStreamRecentlyValidated() {
+        return mValidStreamTime != 0
+                && SystemClock.elapsedRealtime() - mValidStreamTime < VALIDATION_REUSE_MILLIS;
+    }
+
+    private void onLinkStopped() {
+        if (mRenderer != null) {
+            mRenderer.onVisualizerLinkChanged(false);
+        }
+        if (mPulseObserver != null) {
+            mPulseObserver.postInvalidate();
+            mPulseObserver.onStopPulse(null);
         }
     }
 
@@ -327,18 +672,31 @@ public class PulseController {
                 mAudioManager.getStreamVolume(streamType) == 0);
     }
 
-    public static void setVisualizerLocked(boolean doLock) {
-        try {
-            IBinder b = ServiceManager.getService(Context.AUDIO_SERVICE);
-            IAudioService audioService = IAudioService.Stub.asInterface(b);
-            audioService.setVisualizerLocked(doLock);
-        } catch (RemoteException e) {
-            Log.e(TAG, "Error setting visualizer lock");
+    /**
+     * Only captures of the global output mix need the system wide lock, a
+     * player's own session is left to other visualizer clients as well
+     */
+    private void updateVisualizerLock(int linkState, int sessionId) {
+        final boolean locked = mLinkState != LINK_IDLE && mLinkedSessionId == AUDIO_SESSION_GLOBAL;
+        final boolean lock = linkState != LINK_IDLE && sessionId == AUDIO_SESSION_GLOBAL;
+        if (lock != locked) {
+            mVisualizerLock.setLocked(lock);
         }
     }
 
     /**
-     * if any of these conditions are met, we unlink regardless of any other states
+     * @deprecated the controller takes and releases the lock with the link
+     * itself. This goes straight to the audio service and is only kept for
+     * existing callers
+     */
+    @Deprecated
+    public static void setVisualizerLocked(boolean doLock) {
+        VisualizerLock.setLockedNow(doLock);
+    }
+
+    /**
+     * if any of these conditions are met, we unlink regardless of any other states.
+     * Muting and pauses are left out, those only suspend the link
      *
      * @return true if unlink is required, false if unlinking is not mandatory
      */
@@ -346,8 +704,7 @@ public class PulseController {
         return mKeyguardShowing
                 || !mScreenOn
                 || !isPulseEnabled()
-                || mPowerSaveModeEnabled
-                || mMusicStreamMuted
+                || isPowerSaveUnlink()
                 || mScreenPinningEnabled;
     }
 
@@ -360,29 +717,75 @@ public class PulseController {
         return isPulseEnabled()
                 && mScreenOn
                 && mIsMediaPlaying
-                && !mLinked
-                && !mPowerSaveModeEnabled
+                && !isPowerSaveUnlink()
                 && !mKeyguardShowing
                 && !mMusicStreamMuted
-                && !mScreenPinningEnabled;
+                && !mScreenPinningEnabled
+                && !mOccluded;
+    }
+
+    /**
+     * The bar window or view was shown or hidden, e.g. by immersive mode
+     */
+    public void setBarVisible(boolean visible) {
+        mBarVisible = visible;
+        updateOcclusion();
+    }
+
+    public void setNotificationPanelExpanded(boolean expanded) {
+        mPanelExpanded = expanded;
+        updateOcclusion();
+    }
+
+    public void setBarAlpha(float alpha) {
+        mBarTransparent = alpha <= 0f;
+        updateOcclusion();
+    }
+
+    /**
+     * Stop feeding the renderer as soon as the bar can't be seen, suspend the
+     * link if it stays that way. Coming back within the grace period just
+     * resumes the stream
+     */
+    private void updateOcclusion() {
+        final boolean occluded = !mBarVisible || mPanelExpanded || mBarTransparent;
+        if (occluded == mOccluded) {
+            return;
+        }
+        mOccluded = occluded;
+        if (occluded) {
+            if (mLinkState == LINK_ACTIVE) {
+                mStreamHandler.pause();
+                mHandler.postDelayed(mSuspendRunnable, SUSPEND_GRACE_MILLIS);
+            }
+        } else {
+            mHandler.removeCallbacks(mSuspendRunnable);
+            if (mLinkState == LINK_ACTIVE && isAbleToLink()) {
+                turnOnPulse();
+            } else {
+                doLinkage();
+            }
+        }
     }
 
     /**
      * Incoming event in which we need to
      * toggle our link state.
+     *
+     *   IDLE   --link-->     ACTIVE
+     *   ACTIVE --paused-->   WARM    (media stopped or muted, bar hidden)
+     *   WARM   --link-->     ACTIVE  (Visualizer reused, validation skipped)
+     *   WARM   --timeout-->  IDLE
+     *   any    --required--> IDLE    (screen off, keyguard, disabled...)
      */
     private void doLinkage() {
         if (isUnlinkRequired()) {
-            if (mLinked) {
-                // explicitly unlink
-                doUnlinkVisualizer();
-            }
-        } else {
-            if (isAbleToLink()) {
-                doLinkVisualizer();
-            } else if (mLinked) {
-                doUnlinkVisualizer();
-            }
+            doUnlinkVisualizer();
+        } else if (isAbleToLink()) {
+            doLinkVisualizer();
+        } else if (!mOccluded) {
+            // hidden bars suspend through mSuspendRunnable, after their grace period
+            doSuspendVisualizer();
         }
     }
 
@@ -393,11 +796,13 @@ public class PulseController {
      * never happened
      */
     private void doSilentUnlinkVisualizer() {
+        mValidStreamTime = 0;
         if (mStreamHandler != null) {
-            if (mLinked) {
+            if (mLinkState != LINK_IDLE) {
+                mHandler.removeCallbacks(mReleaseRunnable);
                 mStreamHandler.unlink();
-                setVisualizerLocked(false);
-                mLinked = false;
+                updateVisualizerLock(LINK_IDLE, mLinkedSessionId);
+                mLinkState = LINK_IDLE;
             }
         }
     }
@@ -408,21 +813,171 @@ public class PulseController {
      */
     private void doLinkVisualizer() {
         if (mStreamHandler != null) {
-            if (!mLinked) {
-                setVisualizerLocked(true);
-                mStreamHandler.link(0);
-                mLinked = true;
-                if (mRenderer != null) {
+            final int sessionId = mAudioSessionId == mFailedSessionId
+                    ? AUDIO_SESSION_GLOBAL : mAudioSessionId;
+            if (mLinkState != LINK_ACTIVE || sessionId != mLinkedSessionId) {
+                mHandler.removeCallbacks(mReleaseRunnable);
+                final boolean wasActive = mLinkState == LINK_ACTIVE;
+                final boolean validated = sessionId == mLinkedSessionId
+                        && isStreamRecentlyValidated();
+                updateVisualizerLock(LINK_ACTIVE, sessionId);
+                if (!validated) {
+                    // a different stream, its rhythm has nothing to do with the last one
+                    mBeatDetector.reset();
+                }
+                // a warm Visualizer on the same session is enabled, not recreated
+                mStreamHandler.link(sessionId, validated);
+                mLinkedSessionId = sessionId;
+                mValidStreamTime = 0;
+                mLinkState = LINK_ACTIVE;
+                if (!wasActive && mRenderer != null) {
                     mRenderer.onVisualizerLinkChanged(true);
                 }
             }
         }
     }
 
+    /**
+     * Beat detection only runs while there is at least one listener
+     */
+    public void addBeatListener(BeatListener listener) {
+        if (mBeatListeners.contains(listener)) {
+            return;
+        }
+        mBeatListeners.add(listener);
+        if (mBeatListeners.size() == 1) {
+            mBeatDetector.reset();
+            mProcessor.setBeatDetector(mBeatDetector);
+        }
+    }
+
+    public void removeBeatListener(BeatListener listener) {
+        if (mBeatListeners.remove(listener) && mBeatListeners.isEmpty()) {
+            mProcessor.setBeatDetector(null);
+            mHandler.removeCallbacks(mBeatRunnable);
+        }
+    }
+
+    /**
+     * @return current tempo estimate in beats per minute, 0 if there is none
+     */
+    public float getTempo() {
+        return mBeatListeners.isEmpty() ? 0f : mBeatDetector.getBpm();
+    }
+
+    /**
+     * Audio session of the active media player. A known session is captured
+     * on its own instead of the global output mix
+     *
+     * @param sessionId - AUDIO_SESSION_GLOBAL, or anything below, if unknown
+     */
+    public void setAudioSessionId(int sessionId) {
+        sessionId = Math.max(AUDIO_SESSION_GLOBAL, sessionId);
+        if (mAudioSessionId == sessionId) {
+            return;
+        }
+        mAudioSessionId = sessionId;
+        mFailedSessionId = AUDIO_SESSION_GLOBAL;
+        if (mLinkState == LINK_ACTIVE) {
+            // move the live link over, a warm one follows when it resumes
+            doLinkVisualizer();
+        }
+    }
+
+    /**
+     * Playback starts are acted on right away, stops only once they last
+     * MEDIA_STOP_DEBOUNCE_MILLIS so flapping state doesn't cycle the link
+     */
     public void setMediaPlaying(boolean playing) {
-        if (mIsMediaPlaying != playing) {
-            mIsMediaPlaying = playing;
-            doLinkage();
+        if (playing) {
+            mHandler.removeCallbacks(mMediaStoppedRunnable);
+            if (!mIsMediaPlaying) {
+                mIsMediaPlaying = true;
+                doLinkage();
+            }
+        } else if (mIsMediaPlaying) {
+            mHandler.removeCallbacks(mMediaStoppedRunnable);
+            mHandler.postDelayed(mMediaStoppedRunnable, MEDIA_STOP_DEBOUNCE_MILLIS);
+        }
+    }
+
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("PulseController {");
+        pw.println("    enabled=" + mPulseEnabled + " link="
+                + (mLinkState == LINK_ACTIVE ? "active" : mLinkState == LINK_WARM ? "warm" : "idle")
+                + " validStream=" + mStreamHandler.isValidStream()
+                + " mediaPlaying=" + mIsMediaPlaying);
+        pw.println("    session=" + mAudioSessionId + " linkedSession=" + mLinkedSessionId
+                + " failedSession=" + mFailedSessionId);
+        pw.println("    style=" + mPulseStyle
+                + " renderer=" + (mRenderer == null ? "null" : mRenderer.getClass().getSimpleName())
+                + " targetFps=" + (mTargetFps == FrameScheduler.FPS_MATCH_DISPLAY
+                        ? "display" : String.valueOf(mTargetFps)));
+        pw.println("    governor: drawBudget=" + mGovernor.getDrawBudget()
+                + "ms processBudget=" + mGovernor.getProcessBudget() + "ms level="
+                + mGovernor.getLevel() + " fps=" + getEffectiveFps()
+                + " minUnits=" + mMinUnits + " minFps=" + mMinFps);
+        pw.println("    occluded=" + mOccluded + " (visible=" + mBarVisible
+                + " panelExpanded=" + mPanelExpanded + " transparent=" + mBarTransparent
+                + ") recentlyValidated=" + isStreamRecentlyValidated());
+        pw.println("    keyguard=" + mKeyguardShowing + " screenOn=" + mScreenOn
+                + " powerSave=" + mPowerSaveModeEnabled
+                + " batterySaverMode=" + mBatterySaverMode + " lowPower=" + isLowPower()
+                + " muted=" + mMusicStreamMuted
+                + " pinned=" + mScreenPinningEnabled);
+        mVisualizerLock.dump(pw, "    ");
+        pw.println("    beatListeners=" + mBeatListeners.size() + " tempo=" + getTempo());
+        mStats.dump(pw, "    ");
+        final FrameRecorder recorder = mRecorder;
+        if (recorder != null) {
+            pw.println("    recording: frames=" + recorder.getFrameCount()
+                    + (recorder.getError() != null ? " error=" + recorder.getError() : ""));
+        }
+        pw.println("}");
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                if ("--reset-pulse-stats".equals(args[i])) {
+                    mStats.reset();
+                } else if ("--pulse-record".equals(args[i])) {
+                    startRecording(pw);
+                } else if ("--pulse-record-stop".equals(args[i])) {
+                    stopRecording(pw);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record live captures for FramePlayer until stopRecording(). Always the
+     * same file in our cache dir, dumpsys args don't get to pick a path
+     */
+    private synchronized void startRecording(PrintWriter pw) {
+        stopRecording(pw);
+        final File file = getRecordingFile();
+        try {
+            mRecorder = new FrameRecorder(new FileOutputStream(file));
+            pw.println("Pulse: recording to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            pw.println("Pulse: can't record to " + file.getAbsolutePath() + ": " + e);
+        }
+    }
+
+    private File getRecordingFile() {
+        return new File(mContext.getCacheDir(), RECORDING_FILE_NAME);
+    }
+
+    private synchronized void stopRecording(PrintWriter pw) {
+        final FrameRecorder recorder = mRecorder;
+        if (recorder == null) {
+            return;
+        }
+        mRecorder = null;
+        try {
+            recorder.close();
+            pw.println("Pulse: recorded " + recorder.getFrameCount() + " frames to "
+                    + getRecordingFile().getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing frame recording", e);
         }
     }
 
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Keep Pulse inside per frame time budgets. Draw time on the UI thread and
+ * processing time on the PulseProcessor thread run in parallel, so each is
+ * averaged over a window of frames and held to its own limit. Walks a
+ * quality ladder: down a step as soon as either runs over in a window, back
+ * up only after several windows with plenty of headroom in both so it
+ * doesn't oscillate
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class PulseGovernor {
+    static final int LEVEL_FULL = 0;
+    static final int LEVEL_NO_FADE = 1;
+    static final int LEVEL_NO_INTERPOLATION = 2;
+    static final int LEVEL_HALF_UNITS = 3;
+    static final int LEVEL_QUARTER_UNITS = 4;
+    // per frame cost can't drop any further, draw fewer frames instead
+    static final int LEVEL_REDUCED_FPS = 5;
+
+    // used for the reduced fps level when the user cap follows the display
+    static final int REDUCED_FPS = 30;
+
+    private static final int WINDOW_FRAMES = 30;
+    private static final float STEP_UP_HEADROOM = 0.5f;
+    private static final int STEP_UP_WINDOWS = 4;
+
+    private long mDrawBudgetNanos;
+    private long mProcessBudgetNanos;
+    private int mLevel = LEVEL_FULL;
+    private long mWindowDrawNanos;
+    private long mWindowProcessNanos;
+    private int mWindowFrames;
+    private int mQuietWindows;
+
+    /**
+     * Limits of 0 or less aren't checked, with neither set quality stays full
+     *
+     * @param drawMillis - per frame draw time on the UI thread
+     * @param processMillis - per capture processing time
+     */
+    void setBudget(float drawMillis, float processMillis) {
+        mDrawBudgetNanos = toNanos(drawMillis);
+        mProcessBudgetNanos = toNanos(processMillis);
+        if (!isEnabled()) {
+            reset();
+        }
+    }
+
+    float getDrawBudget() {
+        return mDrawBudgetNanos / 1000000f;
+    }
+
+    float getProcessBudget() {
+        return mProcessBudgetNanos / 1000000f;
+    }
+
+    private boolean isEnabled() {
+        return mDrawBudgetNanos > 0 || mProcessBudgetNanos > 0;
+    }
+
+    private static long toNanos(float millis) {
+        return millis > 0 ? (long) (millis * 1000000) : 0;
+    }
+
+    /**
+     * Start over from full quality, e.g. for a new renderer
+     */
+    void reset() {
+        mLevel = LEVEL_FULL;
+        mWindowDrawNanos = 0;
+        mWindowProcessNanos = 0;
+        mWindowFrames = 0;
+        mQuietWindows = 0;
+    }
+
+    /**
+     * UI thread, once per drawn frame
+     *
+     * @return true if the quality level changed
+     */
+    boolean onFrame(long drawNanos, long processNanos) {
+        if (!isEnabled()) {
+            return false;
+        }
+        mWindowDrawNanos += drawNanos;
+        mWindowProcessNanos += processNanos;
+        if (++mWindowFrames < WINDOW_FRAMES) {
+            return false;
+        }
+        final long draw = mWindowDrawNanos / mWindowFrames;
+        final long process = mWindowProcessNanos / mWindowFrames;
+        mWindowDrawNanos = 0;
+        mWindowProcessNanos = 0;
+        mWindowFrames = 0;
+        if (isOver(draw, mDrawBudgetNanos, 1f) || isOver(process, mProcessBudgetNanos, 1f)) {
+            mQuietWindows = 0;
+            if (mLevel < LEVEL_REDUCED_FPS) {
+                mLevel++;
+                return true;
+            }
+        } else if (!isOver(draw, mDrawBudgetNanos, STEP_UP_HEADROOM)
+                && !isOver(process, mProcessBudgetNanos, STEP_UP_HEADROOM)
+                && mLevel > LEVEL_FULL) {
+            if (++mQuietWindows >= STEP_UP_WINDOWS) {
+                mQuietWindows = 0;
+                mLevel--;
+                return true;
+            }
+        } else {
+            mQuietWindows = 0;
+        }
+        return false;
+    }
+
+    // unchecked limits are never over
+    private static boolean isOver(long average, long budget, float fraction) {
+        return budget > 0 && average >= budget * fraction;
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    boolean isFadeEnabled() {
+        return mLevel < LEVEL_NO_FADE;
+    }
+
+    boolean isInterpolationEnabled() {
+        return mLevel < LEVEL_NO_INTERPOLATION;
+    }
+
+    /**
+     * @return what to divide the user's unit count by
+     */
+    int getUnitDivisor() {
+        return mLevel >= LEVEL_QUARTER_UNITS ? 4 : mLevel >= LEVEL_HALF_UNITS ? 2 : 1;
+    }
+
+    /**
+     * @param userFps - user fps cap, FrameScheduler.FPS_MATCH_DISPLAY for none
+     * @param minFps - never cap below this
+     * @return fps cap to hand the renderer
+     */
+    int capFps(int userFps, int minFps) {
+        if (mLevel < LEVEL_REDUCED_FPS) {
+            return userFps;
+        }
+        final int reduced = Math.max(minFps,
+                userFps == FrameScheduler.FPS_MATCH_DISPLAY ? REDUCED_FPS : userFps / 2);
+        return userFps == FrameScheduler.FPS_MATCH_DISPLAY ? reduced : Math.min(userFps, reduced);
+    }
+}
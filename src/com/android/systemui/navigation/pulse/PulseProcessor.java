@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Move capture processing off the Visualizer callback thread. Captures are
+ * copied into a pending buffer and handed to the renderer's processing
+ * stages on a dedicated worker. If the worker falls behind, only the newest
+ * capture is processed
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+
+class PulseProcessor {
+    private static final String TAG = PulseProcessor.class.getSimpleName();
+
+    private static final int MSG_FFT = 1;
+    private static final int MSG_WAVEFORM = 2;
+
+    private final HandlerThread mThread;
+    private final Handler mWorker;
+    private final Object mLock = new Object();
+    private final PulseStats mStats;
+    private volatile Renderer mRenderer;
+    // only while someone listens for beats
+    private volatile BeatDetector mBeatDetector;
+
+    // guarded by mLock. Capture thread fills the pending buffers, the worker
+    // swaps them with its working buffers and processes outside the lock
+    private byte[] mPendingFft = new byte[0];
+    private byte[] mPendingWaveform = new byte[0];
+    private boolean mFftPending;
+    private boolean mWaveformPending;
+    // arrival time of the capture in each pending buffer
+    private long mPendingFftNanos;
+    private long mPendingWaveformNanos;
+
+    // worker thread only
+    private byte[] mWorkingFft = new byte[0];
+    private byte[] mWorkingWaveform = new byte[0];
+
+    PulseProcessor(PulseStats stats) {
+        mStats = stats;
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        mThread.start();
+        mWorker = new Handler(mThread.getLooper()) {
+            @Override
+            public void handleMessage(Message m) {
+                switch (m.what) {
+                    case MSG_FFT:
+                        processFFT();
+                        break;
+                    case MSG_WAVEFORM:
+                        processWaveForm();
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Drop pending captures and let the worker thread finish. Captures
+     * arriving afterwards are ignored
+     */
+    void release() {
+        mRenderer = null;
+        mBeatDetector = null;
+        mWorker.removeCallbacksAndMessages(null);
+        mThread.quitSafely();
+    }
+
+    void setRenderer(Renderer renderer) {
+        mRenderer = renderer;
+    }
+
+    void setBeatDetector(BeatDetector beatDetector) {
+        mBeatDetector = beatDetector;
+    }
+
+    /**
+     * Called from the Visualizer capture thread. Never waits on processing
+     */
+    void onFFTUpdate(byte[] bytes) {
+        mStats.mCaptures.incrementAndGet();
+        synchronized (mLock) {
+            if (mPendingFft.length != bytes.length) {
+                mPendingFft = new byte[bytes.length];
+            }
+            System.arraycopy(bytes, 0, mPendingFft, 0, bytes.length);
+            mPendingFftNanos = System.nanoTime();
+            if (mFftPending) {
+                // worker hasn't picked up the last one, it gets this one instead
+                mStats.mCapturesCoalesced.incrementAndGet();
+                return;
+            }
+            mFftPending = true;
+        }
+        mWorker.sendEmptyMessage(MSG_FFT);
+    }
+
+    void onWaveFormUpdate(byte[] bytes) {
+        mStats.mCaptures.incrementAndGet();
+        synchronized (mLock) {
+            if (mPendingWaveform.length != bytes.length) {
+                mPendingWaveform = new byte[bytes.length];
+            }
+            System.arraycopy(bytes, 0, mPendingWaveform, 0, bytes.length);
+            mPendingWaveformNanos = System.nanoTime();
+            if (mWaveformPending) {
+                mStats.mCapturesCoalesced.incrementAndGet();
+                return;
+            }
+            mWaveformPending = true;
+        }
+        mWorker.sendEmptyMessage(MSG_WAVEFORM);
+    }
+
+    private void processFFT() {
+        final byte[] fft;
+        final long captureNanos;
+        synchronized (mLock) {
+            fft = mPendingFft;
+            captureNanos = mPendingFftNanos;
+            mPendingFft = mWorkingFft;
+            mWorkingFft = fft;
+            mFftPending = false;
+        }
+        final Renderer renderer = mRenderer;
+        if (renderer != null) {
+            final long start = System.nanoTime();
+            renderer.onFFTUpdate(fft);
+            if (!renderer.needsWaveform()) {
+                mStats.onCaptureProcessed(captureNanos, System.nanoTime() - start);
+            }
+        }
+        final BeatDetector beatDetector = mBeatDetector;
+        if (beatDetector != null) {
+            beatDetector.onFFTUpdate(fft, captureNanos / 1000000);
+        }
+    }
+
+    private void processWaveForm() {
+        final byte[] waveform;
+        final long captureNanos;
+        synchronized (mLock) {
+            waveform = mPendingWaveform;
+            captureNanos = mPendingWaveformNanos;
+            mPendingWaveform = mWorkingWaveform;
+            mWorkingWaveform = waveform;
+            mWaveformPending = false;
+        }
+        final Renderer renderer = mRenderer;
+        if (renderer != null) {
+            final long start = System.nanoTime();
+            renderer.onWaveFormUpdate(waveform);
+            mStats.onCaptureProcessed(captureNanos, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Frame pacing counters for dumpsys. Written from the capture, processing
+ * and UI threads without locks or allocation, read only when dumping
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class PulseStats {
+    // FFT and waveform captures handed to us by the Visualizer
+    final AtomicLong mCaptures = new AtomicLong();
+    // captures overwritten before the processing thread got to them
+    final AtomicLong mCapturesCoalesced = new AtomicLong();
+    final AtomicLong mFramesRendered = new AtomicLong();
+    // vsyncs skipped by FrameScheduler to hold the target fps
+    final AtomicLong mFramesThrottled = new AtomicLong();
+    final Histogram mCaptureToDraw = new Histogram();
+    final Histogram mProcessTime = new Histogram();
+    final Histogram mDrawTime = new Histogram();
+
+    // arrival time of the oldest processed capture not drawn yet, 0 if none
+    private final AtomicLong mUndrawnCapture = new AtomicLong();
+    private volatile long mResetTime = SystemClock.elapsedRealtime();
+    private volatile long mLastProcessNanos;
+    // frame cost split by power tier, index 1 is the battery saver low power tier
+    private final AtomicLongArray mTierFrames = new AtomicLongArray(2);
+    private final AtomicLongArray mTierCostNanos = new AtomicLongArray(2);
+    // UI thread only
+    private final long[] mTierMillis = new long[2];
+    private long mTierSince = SystemClock.elapsedRealtime();
+    private volatile boolean mLowPower;
+
+    /**
+     * Processing thread. A capture that arrived at captureNanos is ready to draw
+     */
+    void onCaptureProcessed(long captureNanos, long processNanos) {
+        mProcessTime.record(processNanos);
+        mLastProcessNanos = processNanos;
+        mUndrawnCapture.compareAndSet(0, captureNanos);
+    }
+
+    /**
+     * UI thread, after a renderer draw() that took drawNanos
+     */
+    void onFrameDrawn(long now, long drawNanos) {
+        mFramesRendered.incrementAndGet();
+        mDrawTime.record(drawNanos);
+        final int tier = mLowPower ? 1 : 0;
+        mTierFrames.incrementAndGet(tier);
+        mTierCostNanos.addAndGet(tier, drawNanos + mLastProcessNanos);
+        final long capture = mUndrawnCapture.getAndSet(0);
+        if (capture != 0) {
+            mCaptureToDraw.record(now - capture);
+        }
+    }
+
+    long getLastProcessNanos() {
+        return mLastProcessNanos;
+    }
+
+    /**
+     * UI thread, frames from now on are counted for the given power tier
+     */
+    void setLowPower(boolean lowPower) {
+        if (lowPower == mLowPower) {
+            return;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        mTierMillis[mLowPower ? 1 : 0] += now - mTierSince;
+        mTierSince = now;
+        mLowPower = lowPower;
+    }
+
+    void reset() {
+        mCaptures.set(0);
+        mCapturesCoalesced.set(0);
+        mFramesRendered.set(0);
+        mFramesThrottled.set(0);
+        mUndrawnCapture.set(0);
+        mCaptureToDraw.reset();
+        mProcessTime.reset();
+        mDrawTime.reset();
+        for (int i = 0; i < 2; i++) {
+            mTierFrames.set(i, 0);
+            mTierCostNanos.set(i, 0);
+            mTierMillis[i] = 0;
+        }
+        mResetTime = SystemClock.elapsedRealtime();
+        mTierSince = mResetTime;
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        final long seconds = Math.max(1,
+                (SystemClock.elapsedRealtime() - mResetTime) / 1000);
+        pw.println(prefix + "stats over " + seconds + "s:");
+        pw.println(prefix + "  captures=" + mCaptures.get()
+                + " coalesced=" + mCapturesCoalesced.get()
+                + " rendered=" + mFramesRendered.get()
+                + " (" + mFramesRendered.get() / seconds + "/s)"
+                + " throttled=" + mFramesThrottled.get());
+        mCaptureToDraw.dump(pw, prefix + "  capture->draw");
+        mProcessTime.dump(pw, prefix + "  process");
+        mDrawTime.dump(pw, prefix + "  draw");
+        dumpTier(pw, prefix + "  full", 0);
+        dumpTier(pw, prefix + "  low power", 1);
+    }
+
+    // cpu is draw plus processing time per second spent in the tier
+    private void dumpTier(PrintWriter pw, String name, int tier) {
+        long millis = mTierMillis[tier];
+        if ((tier == 1) == mLowPower) {
+            millis += SystemClock.elapsedRealtime() - mTierSince;
+        }
+        final long frames = mTierFrames.get(tier);
+        final long cost = mTierCostNanos.get(tier);
+        pw.println(name + ": " + millis / 1000 + "s frames=" + frames
+                + " avg=" + (frames == 0 ? 0 : cost / frames / 1000) + "us"
+                + " cpu=" + (millis == 0 ? 0 : cost / millis) + "us/s");
+    }
+
+    /**
+     * Power of two buckets in microseconds, bucket i counts samples in
+     * [2^i, 2^(i+1)) us. Percentiles are reported as the bucket's upper bound
+     */
+    static class Histogram {
+        private static final int BUCKETS = 24;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            final long micros = nanos / 1000;
+            final int bucket = micros == 0 ? 0
+                    : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max = mMaxNanos.get();
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mTotalNanos.set(0);
+            mMaxNanos.set(0);
+        }
+
+        long percentileMicros(int percent) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mBuckets.get(i);
+            }
+            final long target = (count * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 0;
+        }
+
+        void dump(PrintWriter pw, String name) {
+            final long count = mCount.get();
+            pw.println(name + ": n=" + count
+                    + " avg=" + (count == 0 ? 0 : mTotalNanos.get() / count / 1000) + "us"
+                    + " p50<" + percentileMicros(50) + "us"
+                    + " p90<" + percentileMicros(90) + "us"
+                    + " p99<" + percentileMicros(99) + "us"
+                    + " max=" + mMaxNanos.get() / 1000 + "us");
+        }
+    }
+}
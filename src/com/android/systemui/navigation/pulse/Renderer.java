@@ -27,44 +27,160 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.os.Handler;
 
-public abstract class Renderer implements VisualizerStreamHandler.Listener {
+public abstract class Renderer implements VisualizerStreamHandler.Listener,
+        FrameScheduler.Callback {
     protected Context mContext;
     protected Handler mHandler;
     protected PulseObserver mCallback;
 
-    private static final long ANIM_FPS_MAX = 40;
-    private static final long ANIM_FPS_TO_MILLIS = 1000 / ANIM_FPS_MAX;
-    private long mCurrentTime;
-    private long mRenderCounter;
-    private long mCurrentCounter;
+    // processing stages, run on the PulseProcessor thread
+    private final BandProcessor mBandProcessor = new BandProcessor();
+
+    private final FrameScheduler mFrameScheduler;
+
+    // quality limits from PulseGovernor, UI thread
+    protected int mUnitDivisor = 1;
+    protected int mMinUnits = 1;
+    protected boolean mInterpolationEnabled = true;
+    protected boolean mFadeEnabled = true;
 
     public Renderer(Context context, Handler handler, PulseObserver callback) {
         mContext = context;
         mHandler = handler;
         mCallback = callback;
-        mRenderCounter = System.currentTimeMillis();
+        mFrameScheduler = new FrameScheduler(this);
     }
 
+    /**
+     * Request a draw on the next vsync. Calls between frames coalesce
+     */
     protected final void postInvalidate() {
-        mCurrentTime = System.currentTimeMillis();
-        mCurrentCounter = mCurrentTime - mRenderCounter;
-        if (mCurrentCounter >= ANIM_FPS_TO_MILLIS) {
-            mRenderCounter = mCurrentTime;
-            mCallback.postInvalidate();
-        }
+        mFrameScheduler.requestFrame();
+    }
+
+    @Override
+    public void onFrame(long frameTimeNanos) {
+        mCallback.invalidate();
+    }
+
+    public void setTargetFps(int fps) {
+        mFrameScheduler.setTargetFps(fps);
+    }
+
+    void setPulseStats(PulseStats stats) {
+        mFrameScheduler.setStats(stats);
     }
 
     public abstract void draw(Canvas canvas);
 
+    /**
+     * Draw cheaper when over the frame budget
+     *
+     * @param unitDivisor - draw the user's unit count divided by this
+     * @param minUnits - but never fewer units than this
+     * @param interpolate - animate between captures
+     * @param fade - run the fade pass
+     */
+    public final void setQuality(int unitDivisor, int minUnits, boolean interpolate,
+            boolean fade) {
+        if (mUnitDivisor == unitDivisor && mMinUnits == minUnits
+                && mInterpolationEnabled == interpolate && mFadeEnabled == fade) {
+            return;
+        }
+        mUnitDivisor = Math.max(1, unitDivisor);
+        mMinUnits = Math.max(1, minUnits);
+        mInterpolationEnabled = interpolate;
+        mFadeEnabled = fade;
+        onQualityChanged();
+    }
+
+    protected void onQualityChanged() {}
+
+    /**
+     * @return true to have the Visualizer capture waveform data for this renderer
+     */
+    public boolean needsWaveform() {
+        return false;
+    }
+
     @Override
     public void onWaveFormUpdate(byte[] bytes) {}
 
+    /**
+     * Process a capture on the PulseProcessor thread: decode, map and smooth
+     * in the BandProcessor, then let the renderer build its geometry. The UI
+     * thread only ever sees finished geometry
+     */
     @Override
-    public void onFFTUpdate(byte[] fft) {}
+    public void onFFTUpdate(byte[] fft) {
+        final int bands = Math.max(0, getBandCount(fft.length / 2));
+        onBandsUpdate(mBandProcessor.process(fft, bands), bands);
+        postInvalidate();
+    }
+
+    /**
+     * Scale decoded magnitudes to pixels. Any thread
+     *
+     * @see FFTDbTable#setScale(float, float)
+     */
+    protected final void setDbScale(float scale, float offset) {
+        mBandProcessor.setScale(scale, offset);
+    }
+
+    /**
+     * @see BandProcessor#setSmoothing(boolean, int, int)
+     */
+    protected final void setSmoothing(boolean enabled, int mode, int windowLength) {
+        mBandProcessor.setSmoothing(enabled, mode, windowLength);
+    }
+
+    /**
+     * @return FFT bins this renderer needs per capture, at most maxBins. The
+     * capture size is negotiated from this, so ask for less if it looks the same
+     */
+    public int getCaptureBins(int maxBins) {
+        return maxBins;
+    }
+
+    /**
+     * @return number of bands this renderer draws for a capture with bins bins
+     */
+    protected int getBandCount(int bins) {
+        return 0;
+    }
+
+    /**
+     * @see BandProcessor#setBandMapping(int, int, int)
+     */
+    protected final void setBandMapping(int type, int linearFirstBin, int linearStride) {
+        mBandProcessor.setBandMapping(type, linearFirstBin, linearStride);
+    }
+
+    protected final BandMapper getBandMapper() {
+        return mBandProcessor.getBandMapper();
+    }
+
+    /**
+     * Geometry stage. Values are already scaled to pixels
+     */
+    protected void onBandsUpdate(float[] bands, int count) {}
 
     public void onVisualizerLinkChanged(boolean linked) {}
 
-    public void destroy() {}
+    /**
+     * Another style took over. The renderer stays cached and may be handed
+     * back later, so keep observers and allocations but stop drawing
+     */
+    public void onDeactivated() {
+        mFrameScheduler.cancel();
+    }
+
+    /**
+     * Evicted from the registry. Release observers, animators and bitmaps
+     */
+    public void destroy() {
+        mFrameScheduler.cancel();
+    }
 
     public void setLeftInLandscape(boolean leftInLandscape) {}
 
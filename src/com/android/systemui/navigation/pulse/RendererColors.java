@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Color settings every renderer shares. Colors a renderer's paint with the
+ * user color, the accent color, album art or the lava lamp, and keeps it
+ * current as those settings change
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.UserHandle;
+import android.provider.Settings;
+
+import com.android.internal.util.NotificationColorUtil;
+import com.android.systemui.R;
+import com.android.systemui.navigation.utils.ColorAnimator;
+
+class RendererColors implements ColorAnimator.ColorAnimationListener {
+    interface Callback {
+        /**
+         * Color settings changed and the paint has its new color
+         */
+        void onColorSettingsChanged();
+    }
+
+    private final Context mContext;
+    private final PulseController mController;
+    private final Paint mPaint;
+    private final int mDefaultColor;
+    private final String mLavaLampSpeedKey;
+    private final Callback mCallback;
+    private final ColorAnimator mLavaLamp;
+    private final ColorSettingsObserver mObserver;
+
+    private int mColor;
+    private int mAccentColor;
+    private int mAlbumColor = -1;
+    private int mLavaLampColorFrom;
+    private int mLavaLampColorTo;
+    private boolean mAutoColor;
+    private boolean mAccentColorEnabled;
+    private boolean mLavaLampSetting;
+    private boolean mLavaLampSuppressed;
+    private boolean mLavaLampEnabled;
+    private boolean mIsValidStream;
+
+    /**
+     * @param paint - colored by this, the renderer owns everything else on it
+     * @param defaultColor - user color when none is set
+     * @param lavaLampSpeedKey - Settings.Secure key for the animation time
+     * @param callback - may be null
+     */
+    RendererColors(Context context, Handler handler, PulseController controller, Paint paint,
+            int defaultColor, String lavaLampSpeedKey, Callback callback) {
+        mContext = context;
+        mController = controller;
+        mPaint = paint;
+        mDefaultColor = defaultColor;
+        mLavaLampSpeedKey = lavaLampSpeedKey;
+        mCallback = callback;
+        mLavaLamp = new ColorAnimator();
+        mLavaLamp.setColorAnimatorListener(this);
+        mObserver = new ColorSettingsObserver(handler);
+    }
+
+    boolean isAccentColorEnabled() {
+        return mAccentColorEnabled;
+    }
+
+    int getLavaLampColorFrom() {
+        return mLavaLampColorFrom;
+    }
+
+    int getLavaLampColorTo() {
+        return mLavaLampColorTo;
+    }
+
+    /**
+     * Keep the lava lamp off, e.g. while a gradient supplies the color
+     */
+    void setLavaLampSuppressed(boolean suppressed) {
+        if (mLavaLampSuppressed != suppressed) {
+            mLavaLampSuppressed = suppressed;
+            applyColor();
+        }
+    }
+
+    void onStreamAnalyzed(boolean isValid) {
+        mIsValidStream = isValid;
+        if (isValid && mLavaLampEnabled && !mAccentColorEnabled) {
+            mLavaLamp.start();
+        }
+    }
+
+    /**
+     * Forget the stream, so a settings change can't start the lava lamp on
+     * a cached renderer. It starts again once a new stream is analyzed
+     */
+    void onDeactivated() {
+        mIsValidStream = false;
+        mLavaLamp.stop();
+    }
+
+    void stopLavaLamp() {
+        mLavaLamp.stop();
+    }
+
+    void destroy() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mLavaLamp.stop();
+    }
+
+    void setColors(boolean colorizedMedia, int[] colors) {
+        if (colorizedMedia) {
+            // be sure the color will always have an acceptable contrast against black navbar
+            mAlbumColor = NotificationColorUtil.findContrastColorAgainstDark(colors[0], 0x000000, true, 2);
+            // now be sure the color will always have an acceptable contrast against white navbar
+            mAlbumColor = NotificationColorUtil.findContrastColor(mAlbumColor, 0xffffff, true, 2);
+        } else {
+            mAlbumColor = -1;
+        }
+        if (mAutoColor && !mLavaLampEnabled) {
+            mPaint.setColor(mAlbumColor != -1 ? mAlbumColor : mColor);
+            mController.setLastColor(mAlbumColor);
+        }
+    }
+
+    void updateSettings() {
+        ContentResolver resolver = mContext.getContentResolver();
+
+        mAccentColorEnabled = Settings.Secure.getIntForUser(resolver,
+                Settings.Secure.PULSE_ACCENT_COLOR_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
+
+        mAutoColor = Settings.Secure.getIntForUser(
+                resolver, Settings.Secure.PULSE_AUTO_COLOR, 0,
+                UserHandle.USER_CURRENT) == 1;
+
+        mLavaLampSetting = Settings.Secure.getIntForUser(resolver,
+                Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED, 1, UserHandle.USER_CURRENT) == 1;
+
+        mColor = Settings.Secure.getIntForUser(resolver,
+                Settings.Secure.FLING_PULSE_COLOR,
+                mDefaultColor,
+                UserHandle.USER_CURRENT);
+        mAccentColor = mContext.getResources().getColor(R.color.pulseAccentColor);
+
+        int lavaLampSpeed = Settings.Secure.getIntForUser(resolver,
+                mLavaLampSpeedKey, 10 * 1000,
+                UserHandle.USER_CURRENT);
+        mLavaLamp.setAnimationTime(lavaLampSpeed);
+        mLavaLampColorFrom = Settings.Secure.getIntForUser(resolver,
+                Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM,
+                0xffff8080,
+                UserHandle.USER_CURRENT);
+        mLavaLampColorTo = Settings.Secure.getIntForUser(resolver,
+                Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO,
+                0xff8080ff,
+                UserHandle.USER_CURRENT);
+        mLavaLamp.setAnimationColors(mLavaLampColorFrom, mLavaLampColorTo);
+
+        applyColor();
+        if (mCallback != null) {
+            mCallback.onColorSettingsChanged();
+        }
+    }
+
+    private void applyColor() {
+        mLavaLampEnabled = !mAutoColor && !mLavaLampSuppressed && mLavaLampSetting;
+
+        if (mAccentColorEnabled) {
+            mPaint.setColor(mAccentColor);
+        }
+
+        if (!mLavaLampEnabled && !mAccentColorEnabled) {
+            int lastColor = mController.getAlbumArtColor();
+            mPaint.setColor(mAutoColor && lastColor != -1 ? lastColor : mColor);
+        }
+
+        if (mLavaLampEnabled && mIsValidStream && !mAccentColorEnabled) {
+            mLavaLamp.start();
+        } else {
+            mLavaLamp.stop();
+        }
+    }
+
+    @Override
+    public void onColorChanged(ColorAnimator colorAnimator, int color) {
+        mPaint.setColor(mAccentColorEnabled ? mAccentColor : color);
+    }
+
+    @Override
+    public void onStartAnimation(ColorAnimator colorAnimator, int firstColor) {
+    }
+
+    @Override
+    public void onStopAnimation(ColorAnimator colorAnimator, int lastColor) {
+        mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : (mAccentColorEnabled ? mAccentColor : mColor));
+    }
+
+    private class ColorSettingsObserver extends ContentObserver {
+        public ColorSettingsObserver(Handler handler) {
+            super(handler);
+            register();
+        }
+
+        void register() {
+            ContentResolver resolver = mContext.getContentResolver();
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_ACCENT_COLOR_ENABLED), false,
+                    this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_COLOR), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED), false,
+                    this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(mLavaLampSpeedKey), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO), false, this,
+                    UserHandle.USER_ALL);
+            resolver.registerContentObserver(
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_AUTO_COLOR), false, this,
+                    UserHandle.USER_ALL);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            updateSettings();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Render styles by id. Renderers are created on first use and the most
+ * recently used ones are kept warm so flipping between styles doesn't
+ * rebuild them. Anything that falls out of the cache is destroyed right away
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.SparseArray;
+
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RendererRegistry {
+    public interface Factory {
+        public Renderer create(Context context, Handler handler, PulseObserver callback,
+                PulseController controller);
+    }
+
+    // the active style and the one before it
+    private static final int CACHE_SIZE = 2;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final PulseController mController;
+    private final SparseArray<Factory> mFactories = new SparseArray<>();
+    // access ordered, eldest entry is the least recently used style
+    private final LinkedHashMap<Integer, Renderer> mCache = new LinkedHashMap<>(4, 0.75f, true);
+    private int mDefaultStyle = -1;
+    private PulseObserver mObserver;
+
+    public RendererRegistry(Context context, Handler handler, PulseController controller) {
+        mContext = context;
+        mHandler = handler;
+        mController = controller;
+    }
+
+    /**
+     * Register a style. The first style registered is the fallback for unknown ids
+     */
+    public void register(int style, Factory factory) {
+        mFactories.put(style, factory);
+        if (mDefaultStyle == -1) {
+            mDefaultStyle = style;
+        }
+    }
+
+    /**
+     * Get the renderer for a style, creating it if it isn't cached. Changing
+     * observer drops every cached renderer since they draw into the old one
+     */
+    public Renderer obtain(int style, PulseObserver observer) {
+        if (mObserver != observer) {
+            clear();
+            mObserver = observer;
+        }
+        if (mFactories.get(style) == null) {
+            style = mDefaultStyle;
+        }
+        Renderer renderer = mCache.get(style);
+        if (renderer == null) {
+            renderer = mFactories.get(style).create(mContext, mHandler, observer, mController);
+            mCache.put(style, renderer);
+            trim();
+        }
+        return renderer;
+    }
+
+    /**
+     * Destroy every cached renderer
+     */
+    public void clear() {
+        for (Renderer renderer : mCache.values()) {
+            renderer.destroy();
+        }
+        mCache.clear();
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<Integer, Renderer>> it = mCache.entrySet().iterator();
+        while (mCache.size() > CACHE_SIZE && it.hasNext()) {
+            final Renderer renderer = it.next().getValue();
+            it.remove();
+            renderer.destroy();
+        }
+    }
+}
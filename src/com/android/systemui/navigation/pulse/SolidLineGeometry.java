@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Bar layout and animation for SolidLineRenderer: unit count under the
+ * current quality, one line per unit in drawLines() order, and the bar tips
+ * moved towards each frame's bands, optionally built into a BarMesh. No
+ * Android dependencies, the benchmark runs it as is
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class SolidLineGeometry {
+    // lines faded by a full surface MULTIPLY pass
+    static final int BAR_STYLE_FADE = 0;
+    // one drawLines call, the units opacity goes into the paint alpha
+    static final int BAR_STYLE_FLAT = 1;
+    // as flat, with round caps
+    static final int BAR_STYLE_ROUND = 2;
+    // as flat, each bar fading out towards its tip. Mesh only, lines draw it flat
+    static final int BAR_STYLE_GRADIENT_CAP = 3;
+
+    private final BarInterpolator mInterpolator = new BarInterpolator();
+    private final BarMesh mMesh = new BarMesh();
+    // style the mesh was laid out for, -1 after a layout change
+    private int mMeshStyle = -1;
+    private float[] mPoints = new float[0];
+    private int mUnits;
+    private int mWidth;
+    private int mHeight;
+    private boolean mVertical;
+    private boolean mLeftInLandscape;
+    private float mBarWidth;
+
+    static int validateBarStyle(int style) {
+        // unknown values from settings get the original look
+        if (style < BAR_STYLE_FADE || style > BAR_STYLE_GRADIENT_CAP) {
+            return BAR_STYLE_FADE;
+        }
+        return style;
+    }
+
+    /**
+     * @return true if the bars are faded by a MULTIPLY pass after drawing
+     */
+    static boolean hasFadePass(int style, boolean fadeEnabled) {
+        return style == BAR_STYLE_FADE && fadeEnabled;
+    }
+
+    /**
+     * @return true if the style can be drawn as a BarMesh, every style but
+     *         the MULTIPLY faded one
+     */
+    static boolean hasMesh(int style) {
+        return style != BAR_STYLE_FADE;
+    }
+
+    /**
+     * @return alpha to draw the lines with. Without the fade pass there is
+     *         no full surface pass, approximate it with the line alpha
+     */
+    static int getLineAlpha(int style, boolean fadeEnabled, int paintAlpha, int unitsOpacity) {
+        return hasFadePass(style, fadeEnabled) ? paintAlpha : paintAlpha * unitsOpacity / 255;
+    }
+
+    /**
+     * @return units to draw for the user's count under the quality limits
+     */
+    static int getUnits(int userUnits, int minUnits, int unitDivisor) {
+        return Math.max(Math.min(minUnits, userUnits), userUnits / unitDivisor);
+    }
+
+    /**
+     * @return true if the count changed and the bars were laid out again
+     */
+    boolean setUnits(int units) {
+        if (units == mUnits) {
+            return false;
+        }
+        mUnits = units;
+        mPoints = new float[units * 4];
+        layout();
+        return true;
+    }
+
+    int getUnits() {
+        return mUnits;
+    }
+
+    void setSize(int width, int height, boolean leftInLandscape) {
+        mWidth = width;
+        mHeight = height;
+        mVertical = height > width;
+        mLeftInLandscape = leftInLandscape;
+        layout();
+    }
+
+    boolean isVertical() {
+        return mVertical;
+    }
+
+    /**
+     * @return stroke width for the bar lines
+     */
+    float getBarWidth() {
+        return mBarWidth;
+    }
+
+    /**
+     * @return lines for drawLines(), four floats per bar
+     */
+    float[] getPoints() {
+        return mPoints;
+    }
+
+    int getBandCount(int bins) {
+        // bin 0 is DC, bars start at bin 1
+        return Math.min(mUnits, bins - 1);
+    }
+
+    /**
+     * Bring the mesh up to date with the bars, laying it out again only if
+     * the layout or style changed since the last call
+     *
+     * @param style - a style hasMesh() accepts
+     * @param color - vertex color, alpha included
+     */
+    BarMesh updateMesh(int style, int color) {
+        if (mMeshStyle != style) {
+            mMeshStyle = style;
+            // vertical bars grow away from whichever edge they sit on
+            final float growth = mVertical && mLeftInLandscape ? 1f : -1f;
+            mMesh.setup(mPoints, mUnits, mBarWidth, mVertical, growth, getMeshCap(style));
+        } else {
+            mMesh.update(mPoints);
+        }
+        mMesh.setColor(color);
+        return mMesh;
+    }
+
+    private static int getMeshCap(int style) {
+        switch (style) {
+            case BAR_STYLE_ROUND:
+                return BarMesh.CAP_ROUND;
+            case BAR_STYLE_GRADIENT_CAP:
+                return BarMesh.CAP_GRADIENT;
+            default:
+                return BarMesh.CAP_FLAT;
+        }
+    }
+
+    /**
+     * Stop animating and start over from where the bars are now, e.g. after
+     * they were moved without the interpolator
+     */
+    void resetAnimation() {
+        mInterpolator.setup(mUnits);
+        mInterpolator.reset(mPoints, getAnimatedOffset(), 4);
+    }
+
+    /**
+     * Aim each bar at its band, or move it straight there without interpolation
+     */
+    void setBands(float[] bands, boolean interpolate, long now) {
+        final int count = Math.min(bands.length, mInterpolator.getCount());
+        final int offset = getAnimatedOffset();
+        for (int i = 0; i < count; i++) {
+            final float target;
+            if (mVertical) {
+                target = mLeftInLandscape ? bands[i] : mPoints[2] - bands[i];
+            } else {
+                target = mPoints[3] - bands[i];
+            }
+            if (interpolate) {
+                mInterpolator.animateTo(i, target, now);
+            } else {
+                mPoints[i * 4 + offset] = target;
+            }
+        }
+    }
+
+    /**
+     * @return true if any bar is still moving and wants another frame
+     */
+    boolean advance(long now) {
+        return mInterpolator.advance(now, mPoints, getAnimatedOffset(), 4);
+    }
+
+    // bars grow along x when vertical, along y otherwise
+    private int getAnimatedOffset() {
+        return mVertical ? 0 : 1;
+    }
+
+    private void layout() {
+        if (mVertical) {
+            setVerticalPoints();
+        } else {
+            setPortraitPoints();
+        }
+        resetAnimation();
+        mMeshStyle = -1;
+    }
+
+    private void setPortraitPoints() {
+        float units = Float.valueOf(mUnits);
+        float barUnit = mWidth / units;
+        float barWidth = barUnit * 8f / 9f;
+        barUnit = barWidth + (barUnit - barWidth) * units / (units - 1);
+        mBarWidth = barWidth;
+        for (int i = 0; i < mUnits; i++) {
+            mPoints[i * 4] = mPoints[i * 4 + 2] = i * barUnit + (barWidth / 2);
+            mPoints[i * 4 + 1] = mHeight;
+            mPoints[i * 4 + 3] = mHeight;
+        }
+    }
+
+    private void setVerticalPoints() {
+        float units = Float.valueOf(mUnits);
+        float barUnit = mHeight / units;
+        float barHeight = barUnit * 8f / 9f;
+        barUnit = barHeight + (barUnit - barHeight) * units / (units - 1);
+        mBarWidth = barHeight;
+        for (int i = 0; i < mUnits; i++) {
+            mPoints[i * 4 + 1] = mPoints[i * 4 + 3] = i * barUnit + (barHeight / 2);
+            mPoints[i * 4] = mLeftInLandscape ? 0 : mWidth;
+            mPoints[i * 4 + 2] = mLeftInLandscape ? 0 : mWidth;
+        }
+    }
+}
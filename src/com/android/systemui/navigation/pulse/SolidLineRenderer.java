@@ -22,7 +22,6 @@
 
 package com.android.systemui.navigation.pulse;
 
-import android.animation.ValueAnimator;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
@@ -34,39 +33,32 @@ import android.graphics.PorterDuffXfermode;
 import android.graphics.PorterDuff.Mode;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings;
 
-import com.android.internal.util.NotificationColorUtil;
-import com.android.systemui.R;
 import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
-import com.android.systemui.navigation.utils.ColorAnimator;
 
-public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAnimationListener {
+public class SolidLineRenderer extends Renderer implements RendererColors.Callback {
     private Paint mPaint;
     private Paint mFadePaint;
-    private ValueAnimator[] mValueAnimators;
-    private FFTAverage[] mFFTAverage;
-    private float[] mFFTPoints;
-    private int mColor;
-    private int mAlbumColor = -1;
-    private boolean mAutoColor;
-    private int mAccentColor;
-
-    private byte rfk, ifk;
-    private int dbValue;
-    private float magnitude;
+    private final Paint mMeshPaint = new Paint();
+    private final SolidLineGeometry mGeometry = new SolidLineGeometry();
+    // band heights handed from the processing thread to draw()
+    private volatile TripleBuffer mBands;
+
     private float mDbFuzzFactor;
-    private boolean mVertical;
     private boolean mLeftInLandscape;
-    private int mWidth, mHeight, mUnits;
+    private int mWidth, mHeight;
+    // units from settings, fewer are drawn while over the frame budget
+    private int mUserUnits;
+    private int mUnitsOpacity;
+    private int mBarStyle;
+    private final BandGradient mGradient = new BandGradient();
+    private int mGradientMode;
 
-    private boolean mIsValidStream;
-    private boolean mPulseAccentColorEnabled;
-    private boolean mLavaLampEnabled;
-    private boolean mSmoothingEnabled;
     private CMRendererObserver mObserver;
-    private ColorAnimator mLavaLamp;
+    private RendererColors mColors;
 
     private PulseController mController;
 
@@ -74,17 +66,16 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
             PulseController controller) {
         super(context, handler, callback);
         mController = controller;
-        mColor = Color.TRANSPARENT;
-        mLavaLamp = new ColorAnimator();
-        mLavaLamp.setColorAnimatorListener(this);
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
+        mColors = new RendererColors(context, handler, controller, mPaint, Color.WHITE,
+                Settings.Secure.PULSE_LAVALAMP_SOLID_SPEED, this);
+        mColors.updateSettings();
         mFadePaint = new Paint();
         mFadePaint.setXfermode(new PorterDuffXfermode(Mode.MULTIPLY));
         mDbFuzzFactor = 5f;
         mObserver = new CMRendererObserver(handler);
         mObserver.updateSettings();
-        loadValueAnimators();
     }
 
     @Override
@@ -95,143 +86,149 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
         }
     }
 
-    private void loadValueAnimators() {
-        if (mValueAnimators != null) {
-            for (int i = 0; i < mValueAnimators.length; i++) {
-                mValueAnimators[i].cancel();
-            }
-        }
-        mValueAnimators = new ValueAnimator[mUnits];
-        final boolean isVertical = mVertical;
-        for (int i = 0; i < mUnits; i++) {
-            final int j;
-            if (isVertical) {
-                j = i * 4;
-            } else {
-                j = i * 4 + 1;
-            }
-            mValueAnimators[i] = new ValueAnimator();
-            mValueAnimators[i].setDuration(128);
-            mValueAnimators[i].addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mFFTPoints[j] = (float) animation.getAnimatedValue();
-                    postInvalidate();
-                }
-            });
+    @Override
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        if (mCallback.getWidth() > 0 && mCallback.getHeight() > 0) {
+            mWidth = mCallback.getWidth();
+            mHeight = mCallback.getHeight();
+            mGeometry.setSize(mWidth, mHeight, mLeftInLandscape);
+            mPaint.setStrokeWidth(mGeometry.getBarWidth());
+            applyGradient();
         }
     }
 
-    private void setPortraitPoints() {
-        float units = Float.valueOf(mUnits);
-        float barUnit = mWidth / units;
-        float barWidth = barUnit * 8f / 9f;
-        barUnit = barWidth + (barUnit - barWidth) * units / (units - 1);
-        mPaint.setStrokeWidth(barWidth);
-        for (int i = 0; i < mUnits; i++) {
-            mFFTPoints[i * 4] = mFFTPoints[i * 4 + 2] = i * barUnit + (barWidth / 2);
-            mFFTPoints[i * 4 + 1] = mHeight;
-            mFFTPoints[i * 4 + 3] = mHeight;
-        }
+    private boolean isGradientEnabled() {
+        return mGradientMode != BandGradient.MODE_OFF && !mColors.isAccentColorEnabled();
     }
 
-    private void setVerticalPoints() {
-        float units = Float.valueOf(mUnits);
-        float barUnit = mHeight / units;
-        float barHeight = barUnit * 8f / 9f;
-        barUnit = barHeight + (barUnit - barHeight) * units / (units - 1);
-        mPaint.setStrokeWidth(barHeight);
-        for (int i = 0; i < mUnits; i++) {
-            mFFTPoints[i * 4 + 1] = mFFTPoints[i * 4 + 3] = i * barUnit + (barHeight / 2);
-            mFFTPoints[i * 4] = mLeftInLandscape ? 0 : mWidth;
-            mFFTPoints[i * 4 + 2] = mLeftInLandscape ? 0 : mWidth;
+    private void applyGradient() {
+        if (isGradientEnabled()) {
+            // the shader supplies the color, the paint only its alpha
+            mPaint.setColor(Color.WHITE);
+            mPaint.setShader(mGradient.get(mGradientMode, mWidth, mHeight, mGeometry.isVertical(),
+                    mLeftInLandscape, mColors.getLavaLampColorFrom(),
+                    mColors.getLavaLampColorTo()));
+        } else {
+            mPaint.setShader(null);
         }
     }
 
+    // a gradient replaces the animated color
+    private void updateGradient() {
+        mColors.setLavaLampSuppressed(isGradientEnabled());
+        // after the lava lamp stops, which puts the plain color back
+        applyGradient();
+    }
+
     @Override
-    public void onSizeChanged(int w, int h, int oldw, int oldh) {
-        if (mCallback.getWidth() > 0 && mCallback.getHeight() > 0) {
-            mWidth = mCallback.getWidth();
-            mHeight = mCallback.getHeight();
-            mVertical = mHeight > mWidth;
-            loadValueAnimators();
-            if (mVertical) {
-                setVerticalPoints();
-            } else {
-                setPortraitPoints();
-            }
-        }
+    public void onColorSettingsChanged() {
+        updateGradient();
     }
 
     @Override
     public void onStreamAnalyzed(boolean isValid) {
-        mIsValidStream = isValid;
         if (isValid) {
             onSizeChanged(0, 0, 0, 0);
-            if (mLavaLampEnabled && !mPulseAccentColorEnabled) {
-                mLavaLamp.start();
-            }
         }
+        mColors.onStreamAnalyzed(isValid);
     }
 
     @Override
-    public void onFFTUpdate(byte[] fft) {
-        for (int i = 0; i < mUnits; i++) {
-            mValueAnimators[i].cancel();
-            rfk = fft[i * 2 + 2];
-            ifk = fft[i * 2 + 3];
-            magnitude = rfk * rfk + ifk * ifk;
-            dbValue = magnitude > 0 ? (int) (10 * Math.log10(magnitude)) : 0;
-            if (mSmoothingEnabled) {
-                dbValue = mFFTAverage[i].average(dbValue);
-            }
-            if (mVertical) {
-                if (mLeftInLandscape) {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            dbValue * mDbFuzzFactor);
-                } else {
-                    mValueAnimators[i].setFloatValues(mFFTPoints[i * 4],
-                            mFFTPoints[2] - (dbValue * mDbFuzzFactor));
-                }
-            } else {
-                mValueAnimators[i].setFloatValues(mFFTPoints[i * 4 + 1],
-                        mFFTPoints[3] - (dbValue * mDbFuzzFactor));
-            }
-            mValueAnimators[i].start();
+    public int getCaptureBins(int maxBins) {
+        final BandMapper mapper = getBandMapper();
+        // bin 0 is DC
+        return mapper == null ? maxBins
+                : Math.min(maxBins, mapper.getMinBins(mGeometry.getUnits(), maxBins) + 1);
+    }
+
+    @Override
+    protected int getBandCount(int bins) {
+        return mGeometry.getBandCount(bins);
+    }
+
+    @Override
+    protected void onBandsUpdate(float[] bands, int count) {
+        TripleBuffer buffer = mBands;
+        if (buffer == null || buffer.size() != count) {
+            buffer = new TripleBuffer(count);
+            mBands = buffer;
         }
+        System.arraycopy(bands, 0, buffer.getWriteBuffer(), 0, count);
+        buffer.publish();
     }
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawLines(mFFTPoints, mPaint);
-        canvas.drawPaint(mFadePaint);
+        final long now = SystemClock.uptimeMillis();
+        final TripleBuffer buffer = mBands;
+        if (buffer != null && buffer.update()) {
+            mGeometry.setBands(buffer.getReadBuffer(), mInterpolationEnabled, now);
+        }
+        if (mInterpolationEnabled && mGeometry.advance(now)) {
+            postInvalidate();
+        }
+        final int alpha = mPaint.getAlpha();
+        final int lineAlpha = SolidLineGeometry.getLineAlpha(mBarStyle, mFadeEnabled, alpha,
+                mUnitsOpacity);
+        // HWUI on this release can't draw vertices, and vertex colors would
+        // replace a gradient shader
+        if (!canvas.isHardwareAccelerated() && SolidLineGeometry.hasMesh(mBarStyle)
+                && mPaint.getShader() == null) {
+            drawMesh(canvas, (mPaint.getColor() & 0x00ffffff) | (lineAlpha << 24));
+            return;
+        }
+        mPaint.setAlpha(lineAlpha);
+        canvas.drawLines(mGeometry.getPoints(), mPaint);
+        mPaint.setAlpha(alpha);
+        if (SolidLineGeometry.hasFadePass(mBarStyle, mFadeEnabled)) {
+            canvas.drawPaint(mFadePaint);
+        }
     }
 
-    @Override
-    public void destroy() {
-        mContext.getContentResolver().unregisterContentObserver(mObserver);
-        mLavaLamp.stop();
+    /**
+     * Every bar in one drawVertices call
+     */
+    private void drawMesh(Canvas canvas, int color) {
+        final BarMesh mesh = mGeometry.updateMesh(mBarStyle, color);
+        canvas.drawVertices(Canvas.VertexMode.TRIANGLES, mesh.getVertexCount(),
+                mesh.getVertices(), 0, null, 0, mesh.getColors(), 0,
+                mesh.getIndices(), 0, mesh.getIndexCount(), mMeshPaint);
     }
 
     @Override
-    public void onVisualizerLinkChanged(boolean linked) {
-        if (!linked) {
-            mLavaLamp.stop();
+    protected void onQualityChanged() {
+        if (mInterpolationEnabled) {
+            // animate on from wherever the bars were left
+            mGeometry.resetAnimation();
+        }
+        applyUnits();
+    }
+
+    private void applyUnits() {
+        if (mGeometry.setUnits(SolidLineGeometry.getUnits(mUserUnits, mMinUnits, mUnitDivisor))) {
+            mPaint.setStrokeWidth(mGeometry.getBarWidth());
+            mController.onCaptureRequirementsChanged(this);
         }
     }
 
     @Override
-    public void onColorChanged(ColorAnimator colorAnimator, int color) {
-        mPaint.setColor(mPulseAccentColorEnabled ? mAccentColor : color);
+    public void onDeactivated() {
+        super.onDeactivated();
+        mColors.onDeactivated();
     }
 
     @Override
-    public void onStartAnimation(ColorAnimator colorAnimator, int firstColor) {
+    public void destroy() {
+        super.destroy();
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mColors.destroy();
     }
 
     @Override
-    public void onStopAnimation(ColorAnimator colorAnimator, int lastColor) {
-        mPaint.setColor(mAutoColor && mAlbumColor != -1 ? mAlbumColor : (mPulseAccentColorEnabled ? mAccentColor : mColor));
+    public void onVisualizerLinkChanged(boolean linked) {
+        if (!linked) {
+            mColors.stopLavaLamp();
+        }
     }
 
     private class CMRendererObserver extends ContentObserver {
@@ -243,40 +240,32 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
         void register() {
             ContentResolver resolver = mContext.getContentResolver();
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_ACCENT_COLOR_ENABLED), false,
-                    this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_COLOR), false, this,
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_FUDGE_FACTOR), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED), false,
-                    this,
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_UNITS_COUNT), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_FUDGE_FACTOR), false, this,
+                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_UNITS_OPACITY), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_LAVALAMP_SOLID_SPEED), false, this,
+                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED), false,
+                    this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM), false, this,
+                    Settings.Secure.getUriFor(PulseController.PULSE_SMOOTHING_MODE), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO), false, this,
+                    Settings.Secure.getUriFor(PulseController.PULSE_SMOOTHING_WINDOW), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_UNITS_COUNT), false, this,
+                    Settings.Secure.getUriFor(PulseController.PULSE_BAND_MAPPING), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_SOLID_UNITS_OPACITY), false, this,
+                    Settings.Secure.getUriFor(PulseController.PULSE_SOLID_BAR_STYLE), false, this,
                     UserHandle.USER_ALL);
             resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.PULSE_AUTO_COLOR), false, this,
-                    UserHandle.USER_ALL);
-            resolver.registerContentObserver(
-                    Settings.Secure.getUriFor(Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED), false,
-                    this,
+                    Settings.Secure.getUriFor(PulseController.PULSE_GRADIENT_MODE), false, this,
                     UserHandle.USER_ALL);
         }
 
@@ -288,102 +277,53 @@ public class SolidLineRenderer extends Renderer implements ColorAnimator.ColorAn
         public void updateSettings() {
             ContentResolver resolver = mContext.getContentResolver();
 
-            mPulseAccentColorEnabled = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.PULSE_ACCENT_COLOR_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
-
-            mAutoColor = Settings.Secure.getIntForUser(
-                    resolver, Settings.Secure.PULSE_AUTO_COLOR, 0,
-                    UserHandle.USER_CURRENT) == 1;
+            mBarStyle = SolidLineGeometry.validateBarStyle(Settings.Secure.getIntForUser(resolver,
+                    PulseController.PULSE_SOLID_BAR_STYLE, SolidLineGeometry.BAR_STYLE_FADE,
+                    UserHandle.USER_CURRENT));
+            mGradientMode = BandGradient.validateMode(Settings.Secure.getIntForUser(resolver,
+                    PulseController.PULSE_GRADIENT_MODE, BandGradient.MODE_OFF,
+                    UserHandle.USER_CURRENT));
 
-            mLavaLampEnabled = !mAutoColor && Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_ENABLED, 1, UserHandle.USER_CURRENT) == 1;
-
-            mColor = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_COLOR,
-                    Color.WHITE,
-                    UserHandle.USER_CURRENT);
-
-            mAccentColor = mContext.getResources().getColor(R.color.pulseAccentColor);
-            if (mPulseAccentColorEnabled) {
-                mPaint.setColor(mAccentColor);
-            }
-
-            if (!mLavaLampEnabled && !mPulseAccentColorEnabled) {
-                int lastColor = mController.getAlbumArtColor();
-                mPaint.setColor(mAutoColor && lastColor != -1 ? lastColor : mColor);
-            }
-            int lavaLampSpeed = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.PULSE_LAVALAMP_SOLID_SPEED, 10 * 1000,
-                    UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationTime(lavaLampSpeed);
-            int lavaLampColorFrom= Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_FROM,
-                    0xffff8080,
-                    UserHandle.USER_CURRENT);
-            int lavaLampColorTo = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_LAVALAMP_COLOR_TO,
-                    0xff8080ff,
-                    UserHandle.USER_CURRENT);
-            mLavaLamp.setAnimationColors(lavaLampColorFrom, lavaLampColorTo);
-
-            if (mLavaLampEnabled && mIsValidStream && !mPulseAccentColorEnabled) {
-                mLavaLamp.start();
-            } else {
-                mLavaLamp.stop();
-            }
             // putFloat, getFloat is better. catch it next time
             mDbFuzzFactor = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_FUDGE_FACTOR, 5,
                     UserHandle.USER_CURRENT);
-            mSmoothingEnabled = Settings.Secure.getIntForUser(resolver,
-                    Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED, 0, UserHandle.USER_CURRENT) == 1;
-
-            int oldUnits = mUnits;
-            mUnits = Settings.Secure.getIntForUser(
+            setDbScale(mDbFuzzFactor, 0f);
+            setSmoothing(Settings.Secure.getIntForUser(resolver,
+                    Settings.Secure.FLING_PULSE_SMOOTHING_ENABLED, 0, UserHandle.USER_CURRENT) == 1,
+                    Settings.Secure.getIntForUser(resolver,
+                            PulseController.PULSE_SMOOTHING_MODE,
+                            FFTSmoother.MODE_MOVING_AVERAGE, UserHandle.USER_CURRENT),
+                    Settings.Secure.getIntForUser(resolver,
+                            PulseController.PULSE_SMOOTHING_WINDOW,
+                            FFTSmoother.DEFAULT_WINDOW_LENGTH, UserHandle.USER_CURRENT));
+
+            mUserUnits = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_UNITS_COUNT, 64,
                     UserHandle.USER_CURRENT);
-            if (mUnits != oldUnits) {
-                mFFTPoints = new float[mUnits * 4];
-                if (mSmoothingEnabled) {
-                    setupFFTAverage();
-                }
-                onSizeChanged(0, 0, 0, 0);
-            }
-
-            if (mSmoothingEnabled) {
-                if (mFFTAverage == null) {
-                    setupFFTAverage();
-                }
-            } else {
-                mFFTAverage = null;
-            }
+            applyUnits();
+
+            // linear keeps the original layout: one bar per bin after DC
+            setBandMapping(Settings.Secure.getIntForUser(resolver,
+                    PulseController.PULSE_BAND_MAPPING, BandMapper.TYPE_LINEAR,
+                    UserHandle.USER_CURRENT), 1, 1);
+            // units or mapping may have changed what we need from the Visualizer
+            mController.onCaptureRequirementsChanged(SolidLineRenderer.this);
 
             int solidUnitsColor = Settings.Secure.getIntForUser(
                     resolver, Settings.Secure.PULSE_SOLID_UNITS_OPACITY, 200,
                     UserHandle.USER_CURRENT);
             mFadePaint.setColor(Color.argb(solidUnitsColor, 255, 255, 255));
-        }
+            mUnitsOpacity = solidUnitsColor;
 
-        private void setupFFTAverage() {
-            mFFTAverage = new FFTAverage[mUnits];
-            for (int i = 0; i < mUnits; i++) {
-                mFFTAverage[i] = new FFTAverage();
-            }
+            mPaint.setStrokeCap(mBarStyle == SolidLineGeometry.BAR_STYLE_ROUND
+                    ? Paint.Cap.ROUND : Paint.Cap.BUTT);
+            updateGradient();
         }
     }
 
+    @Override
     public void setColors(boolean colorizedMedia, int[] colors) {
-        if (colorizedMedia) {
-            // be sure the color will always have an acceptable contrast against black navbar
-            mAlbumColor = NotificationColorUtil.findContrastColorAgainstDark(colors[0], 0x000000, true, 2);
-            // now be sure the color will always have an acceptable contrast against white navbar
-            mAlbumColor = NotificationColorUtil.findContrastColor(mAlbumColor, 0xffffff, true, 2);
-        } else {
-            mAlbumColor = -1;
-        }
-        if (mAutoColor && !mLavaLampEnabled) {
-            mPaint.setColor(mAlbumColor != -1 ? mAlbumColor : mColor);
-            mController.setLastColor(mAlbumColor);
-        }
+        mColors.setColors(colorizedMedia, colors);
     }
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Lock free single writer, single reader handoff of float frames. The writer
+ * always owns a free buffer, the reader always owns the latest complete
+ * frame and a third buffer is swapped between them through one atomic int
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TripleBuffer {
+    private static final int INDEX_MASK = 0x3;
+    // set when the shared buffer holds a frame the reader hasn't seen
+    private static final int FRESH = 0x4;
+
+    private final float[][] mBuffers = new float[3][];
+    private final AtomicInteger mShared = new AtomicInteger(1);
+    private final int mSize;
+
+    // owned by the writer thread
+    private int mWrite = 0;
+    // owned by the reader thread
+    private int mRead = 2;
+
+    TripleBuffer(int size) {
+        mSize = size;
+        for (int i = 0; i < mBuffers.length; i++) {
+            mBuffers[i] = new float[size];
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Writer side. Fill this buffer completely, then publish()
+     */
+    float[] getWriteBuffer() {
+        return mBuffers[mWrite];
+    }
+
+    /**
+     * Writer side. Hand the write buffer to the reader and take the spare
+     */
+    void publish() {
+        mWrite = mShared.getAndSet(mWrite | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side. Swap in the newest published frame if there is one
+     *
+     * @return true if getReadBuffer() now holds a frame not seen before
+     */
+    boolean update() {
+        if ((mShared.get() & FRESH) == 0) {
+            return false;
+        }
+        mRead = mShared.getAndSet(mRead) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Reader side. Latest complete frame, stable until the next update()
+     */
+    float[] getReadBuffer() {
+        return mBuffers[mRead];
+    }
+}
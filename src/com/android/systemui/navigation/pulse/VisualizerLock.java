@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * System wide visualizer lock held through the audio service. The binder
+ * proxy is looked up once and dropped only if the service dies, calls go
+ * out in order on the UiOffloadThread. Locks apply right away, unlocks
+ * wait a moment so an unlock followed by a lock never reaches the service
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.content.Context;
+import android.media.IAudioService;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.util.Log;
+
+import com.android.systemui.Dependency;
+import com.android.systemui.UiOffloadThread;
+
+import java.io.PrintWriter;
+
+class VisualizerLock {
+    private static final String TAG = VisualizerLock.class.getSimpleName();
+    private static final long UNLOCK_DELAY_MILLIS = 1000;
+
+    private final Handler mHandler;
+    private final UiOffloadThread mUiOffloadThread;
+    // state last handed to the service, handler thread only
+    private boolean mLocked;
+    private boolean mRequested;
+    private int mCallsSent;
+    private int mCallsCollapsed;
+    // shared by every lock, cleared from a binder thread when the service dies
+    private static volatile IAudioService sAudioService;
+
+    private static final IBinder.DeathRecipient sDeathRecipient = new IBinder.DeathRecipient() {
+        @Override
+        public void binderDied() {
+            sAudioService = null;
+        }
+    };
+
+    private final Runnable mUnlockRunnable = new Runnable() {
+        @Override
+        public void run() {
+            apply(false);
+        }
+    };
+
+    VisualizerLock(Handler handler) {
+        mHandler = handler;
+        mUiOffloadThread = Dependency.get(UiOffloadThread.class);
+    }
+
+    /**
+     * Handler thread
+     */
+    void setLocked(boolean lock) {
+        if (lock == mRequested) {
+            return;
+        }
+        mRequested = lock;
+        if (lock) {
+            mHandler.removeCallbacks(mUnlockRunnable);
+            if (mLocked) {
+                // the unlock never went out, it and this lock cancel out
+                mCallsCollapsed += 2;
+            } else {
+                apply(true);
+            }
+        } else if (mLocked) {
+            mHandler.postDelayed(mUnlockRunnable, UNLOCK_DELAY_MILLIS);
+        }
+    }
+
+    private void apply(boolean lock) {
+        if (lock == mLocked) {
+            return;
+        }
+        mLocked = lock;
+        mCallsSent++;
+        mUiOffloadThread.submit(() -> setLockedNow(lock));
+    }
+
+    /**
+     * Call the service on this thread, without the delay or the collapsing
+     * setLocked() does. Any thread
+     */
+    static void setLockedNow(boolean lock) {
+        final IAudioService audioService = getAudioService();
+        if (audioService == null) {
+            return;
+        }
+        try {
+            audioService.setVisualizerLocked(lock);
+        } catch (RemoteException e) {
+            Log.e(TAG, "Error setting visualizer lock");
+        }
+    }
+
+    private static synchronized IAudioService getAudioService() {
+        IAudioService audioService = sAudioService;
+        if (audioService == null) {
+            final IBinder b = ServiceManager.getService(Context.AUDIO_SERVICE);
+            if (b == null) {
+                return null;
+            }
+            try {
+                b.linkToDeath(sDeathRecipient, 0);
+            } catch (RemoteException e) {
+                // already dead, look it up again next time
+                return null;
+            }
+            audioService = IAudioService.Stub.asInterface(b);
+            sAudioService = audioService;
+        }
+        return audioService;
+    }
+
+    void dump(PrintWriter pw, String prefix) {
+        pw.println(prefix + "visualizerLock: locked=" + mLocked + " requested=" + mRequested
+                + " sent=" + mCallsSent + " collapsed=" + mCallsCollapsed);
+    }
+}
@@ -32,25 +32,28 @@ import com.android.systemui.Dependency;
 import com.android.systemui.UiOffloadThread;
 
 public class VisualizerStreamHandler {
-    public interface Listener {
+    public interface Listener extends FrameListener {
         public void onStreamAnalyzed(boolean isValid);
-
-        public void onFFTUpdate(byte[] bytes);
-
-        public void onWaveFormUpdate(byte[] bytes);
     }
 
     protected static final String TAG = VisualizerStreamHandler.class.getSimpleName();
-    protected static final boolean ENABLE_WAVEFORM = false;
 
     protected static final int MSG_STREAM_VALID = 55;
     protected static final int MSG_STREAM_INVALID = 56;
     // we have 6 seconds to get three consecutive valid frames
     protected static final int VALIDATION_TIME_MILLIS = 6000;
     protected static final int VALID_BYTES_THRESHOLD = 3;
+    // capture rates are in milliHertz
+    protected static final float MAX_CAPTURE_RATE_FRACTION = 0.75f;
+    protected static final int MIN_CAPTURE_RATE = 5000;
+    protected static final int LOW_POWER_CAPTURE_RATE_DIVISOR = 3;
 
     protected Visualizer mVisualizer;
+    protected Visualizer.OnDataCaptureListener mCaptureListener;
     protected int mAudioSessionId;
+    protected volatile boolean mWaveformEnabled;
+    protected volatile int mCaptureSize;
+    protected volatile int mCaptureRate;
 
     // manage stream validation
     protected int mConsecutiveFrames;
@@ -91,6 +94,63 @@ public class VisualizerStreamHandler {
         mController = controller;
         mListener = listener;
         mUiOffloadThread = Dependency.get(UiOffloadThread.class);
+        mCaptureSize = Visualizer.getCaptureSizeRange()[1];
+        mCaptureRate = getDefaultCaptureRate();
+    }
+
+    /**
+     * @return the most FFT bins a capture can hold
+     */
+    public static int getMaxCaptureBins() {
+        return Visualizer.getCaptureSizeRange()[1] / 2;
+    }
+
+    private static int getDefaultCaptureRate() {
+        return (int) (Visualizer.getMaxCaptureRate() * MAX_CAPTURE_RATE_FRACTION);
+    }
+
+    /**
+     * Size captures to what the renderer consumes and pace them to what it
+     * draws. Reconfigures a live Visualizer only if something changed
+     *
+     * @param bins - FFT bins the renderer needs, rounded up to a supported size
+     * @param fps - renderer target fps, FrameScheduler.FPS_MATCH_DISPLAY for no cap
+     * @param lowPower - capture at a third of the default rate, then cap to fps,
+     *        never below MIN_CAPTURE_RATE
+     */
+    public final void setCaptureConfig(int bins, int fps, boolean lowPower) {
+        final int[] range = Visualizer.getCaptureSizeRange();
+        int size = Integer.highestOneBit(Math.max(1, bins * 2 - 1)) << 1;
+        size = Math.max(range[0], Math.min(range[1], size));
+
+        int rate = getDefaultCaptureRate();
+        if (lowPower) {
+            // divide the default rate, not the fps cap, which low power already lowers
+            rate /= LOW_POWER_CAPTURE_RATE_DIVISOR;
+        }
+        if (fps > 0) {
+            // captures beyond the draw rate would only be coalesced
+            rate = Math.min(rate, fps * 1000);
+        }
+        rate = Math.max(Math.min(MIN_CAPTURE_RATE, getDefaultCaptureRate()), rate);
+
+        if (size == mCaptureSize && rate == mCaptureRate) {
+            return;
+        }
+        mCaptureSize = size;
+        mCaptureRate = rate;
+        mUiOffloadThread.submit(() -> {
+            if (mVisualizer != null) {
+                // capture size can only change while disabled
+                final boolean wasEnabled = mVisualizer.getEnabled();
+                mVisualizer.setEnabled(false);
+                if (mVisualizer.getCaptureSize() != mCaptureSize) {
+                    mVisualizer.setCaptureSize(mCaptureSize);
+                }
+                setCaptureListener();
+                mVisualizer.setEnabled(wasEnabled);
+            }
+        });
     }
 
     /**
@@ -99,6 +159,14 @@ public class VisualizerStreamHandler {
      * @param player - MediaPlayer instance to link to
      */
     public final void link(int audioSessionId) {
+        link(audioSessionId, false);
+    }
+
+    /**
+     * @param validated - the stream was validated before a temporary unlink,
+     *        report it valid right away instead of analyzing it again
+     */
+    public final void link(int audioSessionId, boolean validated) {
         mUiOffloadThread.submit(() -> {
             if (mVisualizer != null && audioSessionId != mAudioSessionId) {
                 mVisualizer.setEnabled(false);
@@ -114,20 +182,20 @@ public class VisualizerStreamHandler {
                     mVisualizer = new Visualizer(audioSessionId);
                 } catch (Exception e) {
                     Log.e(TAG, "Error enabling visualizer!", e);
+                    // lets the controller fall back to another session
+                    mHandler.sendEmptyMessage(MSG_STREAM_INVALID);
                     return;
                 }
                 mVisualizer.setEnabled(false);
-                mVisualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
+                mVisualizer.setCaptureSize(mCaptureSize);
 
-                Visualizer.OnDataCaptureListener captureListener = new Visualizer.OnDataCaptureListener() {
+                mCaptureListener = new Visualizer.OnDataCaptureListener() {
                     @Override
                     public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes,
                             int samplingRate) {
-                        if (ENABLE_WAVEFORM) {
-                            analyze(bytes);
-                            if (isValidStream() && !mIsPaused) {
-                                mListener.onWaveFormUpdate(bytes);
-                            }
+                        // waveform silence is 128, not 0, so only fft data validates
+                        if (mWaveformEnabled && isValidStream() && !mIsPaused) {
+                            mListener.onWaveFormUpdate(bytes);
                         }
                     }
 
@@ -140,16 +208,62 @@ public class VisualizerStreamHandler {
                         }
                     }
                 };
+                setCaptureListener();
+            }
+            if (validated) {
+                // analyze() bails out from the first capture on
+                mIsAnalyzed = true;
+                mIsValidated = true;
+                mHandler.sendEmptyMessage(MSG_STREAM_VALID);
+            }
+            mVisualizer.setEnabled(true);
+        });
+    }
 
-                mVisualizer.setDataCaptureListener(captureListener,
-                        (int) (Visualizer.getMaxCaptureRate() * 0.75), ENABLE_WAVEFORM, true);
+    /**
+     * Only capture waveform data while a renderer actually draws it
+     */
+    public final void setWaveformEnabled(boolean enabled) {
+        if (mWaveformEnabled == enabled) {
+            return;
+        }
+        mWaveformEnabled = enabled;
+        mUiOffloadThread.submit(() -> {
+            if (mVisualizer != null) {
+                final boolean wasEnabled = mVisualizer.getEnabled();
+                mVisualizer.setEnabled(false);
+                setCaptureListener();
+                mVisualizer.setEnabled(wasEnabled);
+            }
+        });
+    }
 
+    private void setCaptureListener() {
+        mVisualizer.setDataCaptureListener(mCaptureListener, mCaptureRate, mWaveformEnabled,
+                true);
+    }
+
+    /**
+     * Stop captures but keep the Visualizer, a link() on the same session
+     * enables it again instead of creating a new one
+     */
+    public final void suspend() {
+        pause();
+        // a stream still being analyzed starts over on resume
+        mHandler.removeMessages(MSG_STREAM_INVALID);
+        if (!isValidStream()) {
+            resetAnalyzer();
+        }
+        mUiOffloadThread.submit(() -> {
+            if (mVisualizer != null) {
+                mVisualizer.setEnabled(false);
             }
-            mVisualizer.setEnabled(true);
         });
     }
 
     public final void unlink() {
+        // a late verdict on the released stream must not reach the listener
+        mHandler.removeMessages(MSG_STREAM_INVALID);
         if (mVisualizer != null) {
             pause();
             mVisualizer.setEnabled(false);
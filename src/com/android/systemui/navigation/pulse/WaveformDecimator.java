@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Reduce a Visualizer waveform capture to one min/max envelope pair per
+ * pixel column
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+class WaveformDecimator {
+    private WaveformDecimator() {}
+
+    /**
+     * Visualizer waveform samples are unsigned 8 bit, centered on 128. For
+     * each column, write the lowest sample to out[2c] and the highest to
+     * out[2c + 1], both normalized to -1..1
+     *
+     * @return the number of columns written, never more than samples.length
+     */
+    static int decimate(byte[] samples, int columns, float[] out) {
+        final int count = samples.length;
+        columns = Math.min(Math.min(columns, count), out.length / 2);
+        if (columns <= 0) {
+            return 0;
+        }
+        int start = 0;
+        for (int c = 0; c < columns; c++) {
+            final int end = (int) ((long) (c + 1) * count / columns);
+            int min = 255;
+            int max = 0;
+            for (int i = start; i < end; i++) {
+                final int sample = samples[i] & 0xff;
+                if (sample < min) {
+                    min = sample;
+                }
+                if (sample > max) {
+                    max = sample;
+                }
+            }
+            out[c * 2] = (min - 128) / 128f;
+            out[c * 2 + 1] = (max - 128) / 128f;
+            start = end;
+        }
+        return columns;
+    }
+}
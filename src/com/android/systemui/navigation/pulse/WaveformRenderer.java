@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2026 The DirtyUnicorns Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Oscilloscope style renderer. Draws the min/max envelope of the waveform
+ * capture, one line per pixel column along the bar
+ *
+ */
+
+package com.android.systemui.navigation.pulse;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.provider.Settings;
+
+import com.android.systemui.navigation.pulse.PulseController.PulseObserver;
+
+public class WaveformRenderer extends Renderer {
+    // Visualizer waveform captures are at most 1024 samples
+    private static final int MAX_COLUMNS = 1024;
+
+    private Paint mPaint;
+    private float[] mEnvelope = new float[MAX_COLUMNS * 2];
+    // line points handed from the processing thread to draw()
+    private volatile TripleBuffer mPointsBuffer;
+    private boolean mHasFrame;
+    private boolean mVertical;
+    private int mWidth, mHeight;
+
+    private RendererColors mColors;
+
+    public WaveformRenderer(Context context, Handler handler, PulseObserver callback,
+            PulseController controller) {
+        super(context, handler, callback);
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        mPaint.setStrokeWidth(1f);
+        mColors = new RendererColors(context, handler, controller, mPaint, Color.WHITE,
+                Settings.Secure.FLING_PULSE_LAVALAMP_SPEED, null);
+        mColors.updateSettings();
+        onSizeChanged(0, 0, 0, 0);
+    }
+
+    @Override
+    public boolean needsWaveform() {
+        return true;
+    }
+
+    @Override
+    public void onStreamAnalyzed(boolean isValid) {
+        if (isValid) {
+            onSizeChanged(0, 0, 0, 0);
+        }
+        mColors.onStreamAnalyzed(isValid);
+    }
+
+    @Override
+    public void onFFTUpdate(byte[] fft) {
+        // nothing to draw from the spectrum
+    }
+
+    @Override
+    public void onWaveFormUpdate(byte[] bytes) {
+        final boolean vertical = mVertical;
+        final int length = vertical ? mHeight : mWidth;
+        final int thickness = vertical ? mWidth : mHeight;
+        final int columns = WaveformDecimator.decimate(bytes, Math.min(length, MAX_COLUMNS),
+                mEnvelope);
+        if (columns == 0) {
+            return;
+        }
+        TripleBuffer buffer = mPointsBuffer;
+        if (buffer == null || buffer.size() != columns * 4) {
+            buffer = new TripleBuffer(columns * 4);
+            mPointsBuffer = buffer;
+        }
+        final float[] points = buffer.getWriteBuffer();
+        final float columnWidth = (float) length / columns;
+        final float center = thickness / 2f;
+        for (int c = 0; c < columns; c++) {
+            final float position = c * columnWidth + columnWidth / 2;
+            // keep silent columns visible as a flat line
+            final float low = center + mEnvelope[c * 2] * center - 0.5f;
+            final float high = center + mEnvelope[c * 2 + 1] * center + 0.5f;
+            if (vertical) {
+                points[c * 4] = low;
+                points[c * 4 + 1] = position;
+                points[c * 4 + 2] = high;
+                points[c * 4 + 3] = position;
+            } else {
+                points[c * 4] = position;
+                points[c * 4 + 1] = thickness - low;
+                points[c * 4 + 2] = position;
+                points[c * 4 + 3] = thickness - high;
+            }
+        }
+        buffer.publish();
+        postInvalidate();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final TripleBuffer buffer = mPointsBuffer;
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.update()) {
+            mHasFrame = true;
+        }
+        if (mHasFrame) {
+            canvas.drawLines(buffer.getReadBuffer(), mPaint);
+        }
+    }
+
+    @Override
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        if (mCallback.getWidth() > 0 && mCallback.getHeight() > 0) {
+            mWidth = mCallback.getWidth();
+            mHeight = mCallback.getHeight();
+            mVertical = mHeight > mWidth;
+        }
+    }
+
+    @Override
+    public void onDeactivated() {
+        super.onDeactivated();
+        mColors.onDeactivated();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        mColors.destroy();
+    }
+
+    @Override
+    public void onVisualizerLinkChanged(boolean linked) {
+        if (!linked) {
+            mColors.stopLavaLamp();
+            mHasFrame = false;
+        }
+    }
+
+    @Override
+    public void setColors(boolean colorizedMedia, int[] colors) {
+        mColors.setColors(colorizedMedia, colors);
+    }
+}
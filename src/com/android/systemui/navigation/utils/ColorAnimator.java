@@ -16,6 +16,10 @@
  * limitations under the License.
  * 
  * Produce a smooth HSV color wheel type animation much like a LavaLamp
+ *
+ * The gradient between the two colors is computed once into a fixed size
+ * table, ticks only look up the nearest entry and listeners hear about a
+ * color only when the entry changes
  * 
  */
 
@@ -34,6 +38,8 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     public static final int ANIM_DEF_DURATION = 10 * 1000;
     public static final String RED = "#ffff8080";
     public static final String BLUE = "#ff8080ff";
+    // distinct colors along the gradient, about one per 40ms at the default duration
+    public static final int COLOR_TABLE_SIZE = 256;
 
     protected final float[] from = new float[3], to = new float[3], hsv = new float[3];
 
@@ -44,6 +50,9 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     protected int mLastColor = Color.parseColor(RED);
     protected boolean mIsRunning;
 
+    protected final int[] mColorTable = new int[COLOR_TABLE_SIZE];
+    protected int mLastIndex = -1;
+
     protected  ColorAnimationListener mListener;
 
     public ColorAnimator() {
@@ -65,12 +74,30 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
         mToColor = toColor;
         mColorAnim = valueAnimator;
         mColorAnim.addUpdateListener(this);
+        buildColorTable();
     }
 
-    public void start() {
-        stop();
+    /**
+     * Transition along each axis of HSV (hue, saturation, value) once per
+     * table entry, so animation ticks don't do any color math
+     */
+    protected void buildColorTable() {
         Color.colorToHSV(mFromColor, from);
         Color.colorToHSV(mToColor, to);
+        final int last = COLOR_TABLE_SIZE - 1;
+        for (int i = 0; i < COLOR_TABLE_SIZE; i++) {
+            final float fraction = (float) i / last;
+            hsv[0] = from[0] + (to[0] - from[0]) * fraction;
+            hsv[1] = from[1] + (to[1] - from[1]) * fraction;
+            hsv[2] = from[2] + (to[2] - from[2]) * fraction;
+            mColorTable[i] = Color.HSVToColor(hsv);
+        }
+        mLastIndex = -1;
+    }
+
+    public void start() {
+        stop();
+        buildColorTable();
         mColorAnim.setDuration(mAnimTime);
         mColorAnim.setRepeatMode(ValueAnimator.REVERSE);
         mColorAnim.setRepeatCount(ValueAnimator.INFINITE);
@@ -110,6 +137,8 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
             mToColor = toColor;
             if (mColorAnim.isRunning()) {
                 start();
+            } else {
+                buildColorTable();
             }
         }
     }
@@ -123,12 +152,18 @@ public class ColorAnimator implements ValueAnimator.AnimatorUpdateListener {
     }
 
     public void onAnimationUpdate(ValueAnimator animation) {
-        // Transition along each axis of HSV (hue, saturation, value)
-        hsv[0] = from[0] + (to[0] - from[0]) * animation.getAnimatedFraction();
-        hsv[1] = from[1] + (to[1] - from[1]) * animation.getAnimatedFraction();
-        hsv[2] = from[2] + (to[2] - from[2]) * animation.getAnimatedFraction();
-
-        mLastColor = Color.HSVToColor(hsv);
+        // an overshooting interpolator can leave [0, 1]
+        final float fraction = Math.max(0f, Math.min(1f, animation.getAnimatedFraction()));
+        final int index = Math.round(fraction * (COLOR_TABLE_SIZE - 1));
+        if (index == mLastIndex) {
+            return;
+        }
+        mLastIndex = index;
+        final int color = mColorTable[index];
+        if (color == mLastColor) {
+            return;
+        }
+        mLastColor = color;
 
         if (mListener != null) {
             mListener.onColorChanged(this, mLastColor);